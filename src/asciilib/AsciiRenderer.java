@@ -18,14 +18,24 @@ package asciilib;
 
 import giflib.Gif;
 import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
 import javax.imageio.ImageIO;
 
 /**
@@ -38,8 +48,28 @@ public class AsciiRenderer {
     private final Palette palette;
     private final ImageSamplingParams samplingParams;
     private int phrasePos = 0;
-    private int framePos = 0;
     private RenderProgressWatcher progressWatcher;
+    private boolean parallel = true;
+    private boolean indexedOutput = false;
+    private volatile boolean cancelled = false;
+    private SampleCache sampleCache; // Recent samples to reuse, if any
+    private int pngCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int pngCompressionStrategy = Deflater.DEFAULT_STRATEGY;
+
+    // Below this many rows, it's faster to render on one thread
+    private static final int MIN_PARALLEL_ROWS = 32;
+
+    // The most pixels in each band of an image rendered straight into a PNG
+    private static final long MAX_BAND_PIXELS = 4 * 1024 * 1024;
+
+    /**
+     * Renders a band of rows, from firstRow up to (but not including) endRow.
+     */
+    private interface RowBandRenderer {
+
+        public void render(int firstRow, int endRow);
+
+    }
 
     /**
      * Create a new ASCII renderer with a palette and a sampling parameters.
@@ -61,7 +91,19 @@ public class AsciiRenderer {
      */
     private void updateProgress(int progress, int rowCount) {
         if (progressWatcher != null) {
-            progressWatcher.update(progress, rowCount, framePos);
+            progressWatcher.update(progress, rowCount, 0); // A single image is always frame 0
+        }
+    }
+
+    /**
+     * Stop rendering if the renderer has been cancelled. Checked between
+     * rows, so a cancelled render stops within a row.
+     *
+     * @throws CancellationException if the renderer has been cancelled
+     */
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Render cancelled");
         }
     }
 
@@ -105,34 +147,195 @@ public class AsciiRenderer {
      * @return the weight for the color
      */
     public String getWeight(Color color) {
-        int lum = getLuminosity(color, getPalette().getWeightCount() - 1);
-        return getPalette().getWeight(lum);
+        return getPalette().getWeight(getPalette().getWeightIndex(color.getRGB()));
     }
 
     /**
-     * Render a row of text from a row of pixels in an image.
+     * Get the position in the phrase that a row starts at.
      *
-     * @param img the image
-     * @param y the y position of the row of pixels
+     * @param phraseBase the position in the phrase that the first row starts at
+     * @param row the index of the row
+     * @param width the number of characters in a row
      *
-     * @return the rendered text
+     * @return the position in the phrase
      */
-    private String renderTextRow(BufferedImage img, int y) {
-        String val = "";
-        for (int x = 0; x < img.getWidth(); x++) {
-            if (getPalette().isUsingPhrase()) {
-                if (phrasePos >= getPalette().getWeightCount()) {
-                    phrasePos = 0;
-                }
+    private int getPhraseStart(int phraseBase, int row, int width) {
+        return (int) Math.floorMod(phraseBase + (long) row * width, (long) getPalette().getWeightCount());
+    }
 
-                val += getPalette().getWeight(phrasePos);
-                phrasePos++;
-            } else {
-                val += getWeight(new Color(img.getRGB(x, y)));
+    /**
+     * @return the position in the phrase the next render starts at
+     */
+    int getPhrasePos() {
+        return phrasePos;
+    }
+
+    /**
+     * Set the position in the phrase the next render starts at, for renders
+     * that were cached instead of rendered.
+     *
+     * @param phrasePos the position in the phrase
+     */
+    void setPhrasePos(int phrasePos) {
+        this.phrasePos = phrasePos;
+    }
+
+    /**
+     * Move the phrase position past a number of characters.
+     *
+     * @param characters the number of characters rendered
+     */
+    private void advancePhrase(long characters) {
+        if (getPalette().isUsingPhrase()) {
+            phrasePos = (int) Math.floorMod(phrasePos + characters, (long) getPalette().getWeightCount());
+        }
+    }
+
+    /**
+     * Sample an image into glyph cells, using the sampling parameters if
+     * there are any, or a column for every pixel if there aren't.
+     *
+     * @param sourceImage the image to sample
+     * @param withColors if the color of each cell should be sampled too
+     *
+     * @return the sampled cells
+     */
+    SampleGrid sample(BufferedImage sourceImage, boolean withColors) {
+        int sampleWidth = sourceImage.getWidth();
+        int sampleHeight = sourceImage.getHeight();
+
+        if (getSamplingParams() != null) {
+            sampleWidth = getSamplingParams().getSampleWidth();
+            sampleHeight = getSamplingParams().getSampleHeight();
+        }
+
+        var g = sourceImage.createGraphics();
+        int ratio = getPalette().getFontRatio(g);
+        g.dispose();
+
+        // Each row of glyphs covers ratio rows of the sample
+        int rowCount = (sampleHeight + ratio - 1) / ratio;
+        double cellWidth = (double) sourceImage.getWidth() / sampleWidth;
+        double cellHeight = (double) sourceImage.getHeight() * ratio / sampleHeight;
+
+        checkCancelled();
+        var grid = (sampleCache != null)
+                ? sampleCache.getSample(sourceImage, sampleWidth, rowCount, cellWidth, cellHeight, sampleHeight, withColors, parallel)
+                : SampleGrid.create(sourceImage, sampleWidth, rowCount, cellWidth, cellHeight, sampleHeight, withColors, parallel);
+        checkCancelled();
+
+        return grid;
+    }
+
+    /**
+     * Get the row of the sample that a row of cells starts at, for reporting
+     * progress.
+     *
+     * @param grid the sampled cells
+     * @param row the row of cells
+     *
+     * @return the row of the sample
+     */
+    private static int getSampleRow(SampleGrid grid, int row) {
+        return (int) ((long) row * grid.getSampleHeight() / Math.max(1, grid.getRows()));
+    }
+
+    /**
+     * Get the weight index for every cell in a row.
+     *
+     * @param grid the sampled cells
+     * @param row the row of cells
+     * @param phraseStart the position in the phrase the row starts at
+     * @param glyphs the buffer to store the weight indices in
+     */
+    private void getRowGlyphs(SampleGrid grid, int row, int phraseStart, int[] glyphs) {
+        int width = grid.getColumns();
+
+        if (getPalette().isUsingPhrase()) {
+            int pos = phraseStart;
+
+            for (int x = 0; x < width; x++) {
+                glyphs[x] = pos;
+                pos++;
+
+                if (pos >= getPalette().getWeightCount()) {
+                    pos = 0;
+                }
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                glyphs[x] = getPalette().getWeightIndex(grid.getLuminance(x, row));
             }
         }
+    }
 
-        return val;
+    /**
+     * Render a row of text from a row of cells.
+     *
+     * @param grid the sampled cells
+     * @param row the row of cells
+     * @param phraseStart the position in the phrase the row starts at
+     * @param glyphs the buffer to store the weight indices in
+     * @param val the buffer to render the text into, which is cleared first
+     */
+    private void renderTextRow(SampleGrid grid, int row, int phraseStart, int[] glyphs, StringBuilder val) {
+        getRowGlyphs(grid, row, phraseStart, glyphs);
+
+        val.setLength(0);
+        for (int glyph : glyphs) {
+            val.append(getPalette().getWeight(glyph));
+        }
+    }
+
+    /**
+     * Get the width a row of text will be drawn at, from the advances of its
+     * glyphs.
+     *
+     * @param grid the sampled cells
+     * @param row the row of cells
+     * @param phraseStart the position in the phrase the row starts at
+     * @param glyphs the buffer to store the weight indices in
+     * @param atlas the glyphs the row will be drawn with
+     *
+     * @return the width of the row
+     */
+    private int getRowWidth(SampleGrid grid, int row, int phraseStart, int[] glyphs, GlyphAtlas atlas) {
+        getRowGlyphs(grid, row, phraseStart, glyphs);
+
+        int rowWidth = 0;
+        for (int glyph : glyphs) {
+            rowWidth += atlas.getAdvance(glyph);
+        }
+
+        return rowWidth;
+    }
+
+    /**
+     * Render groups of rows, in parallel if the renderer is parallel and
+     * there are enough rows to make it worth it.
+     *
+     * @param firstRow the first row to render
+     * @param endRow the row after the last row to render
+     * @param bandRenderer the function to render a band of rows
+     */
+    private void renderRowBands(int firstRow, int endRow, RowBandRenderer bandRenderer) {
+        int rowCount = endRow - firstRow;
+        int bandCount = 1;
+
+        if (parallel && rowCount >= MIN_PARALLEL_ROWS) {
+            bandCount = Math.min(rowCount, ForkJoinPool.getCommonPoolParallelism() * 4);
+        }
+
+        if (bandCount <= 1) {
+            bandRenderer.render(firstRow, endRow);
+        } else {
+            final int bands = bandCount;
+            IntStream.range(0, bands).parallel().forEach(band -> {
+                bandRenderer.render(
+                        firstRow + (int) ((long) rowCount * band / bands),
+                        firstRow + (int) ((long) rowCount * (band + 1) / bands));
+            });
+        }
     }
 
     /**
@@ -143,19 +346,62 @@ public class AsciiRenderer {
      * @return the ASCII art text
      */
     public String renderText(BufferedImage sourceImage) {
-        var sampledImage = (getSamplingParams() != null)
-                ? ImageResizer.getSample(sourceImage, getSamplingParams()) : sourceImage;
+        var ascii = new StringBuilder();
 
-        Graphics2D g = sampledImage.createGraphics();
-        int ratio = getPalette().getFontRatio(g);
-        String ascii = "";
+        try {
+            renderText(sourceImage, ascii);
+        } catch (IOException ex) { // Never thrown by a StringBuilder
+            throw new UncheckedIOException(ex);
+        }
+
+        return ascii.toString();
+    }
+
+    /**
+     * Render ASCII art text derived from an image, writing each row out as
+     * soon as it is rendered. Only a few rows are ever held in memory, so the
+     * text can be streamed to a file no matter how large it is.
+     *
+     * @param sourceImage the image to derive the pixel data from
+     * @param out where to write the ASCII art text
+     *
+     * @throws IOException if there was an error writing the text
+     */
+    public void renderText(BufferedImage sourceImage, Appendable out) throws IOException {
+        var grid = sample(sourceImage, false);
+        int width = grid.getColumns();
+        int rowCount = grid.getRows();
+        int phraseBase = phrasePos;
+        var rowsDone = new AtomicInteger();
+
+        // Render a window of rows at a time (just one when not parallel),
+        // then write them out in order
+        int window = parallel ? Math.max(MIN_PARALLEL_ROWS, ForkJoinPool.getCommonPoolParallelism() * 4) : 1;
+        var rowBuffers = new StringBuilder[Math.min(window, rowCount)];
+        for (int i = 0; i < rowBuffers.length; i++) {
+            rowBuffers[i] = new StringBuilder(width + 2);
+        }
+
+        for (int windowStart = 0; windowStart < rowCount; windowStart += window) {
+            int windowEnd = Math.min(rowCount, windowStart + window);
+            final int bufferOffset = windowStart;
+
+            renderRowBands(windowStart, windowEnd, (int firstRow, int endRow) -> {
+                var glyphs = new int[width];
+
+                for (int row = firstRow; row < endRow; row++) {
+                    checkCancelled();
+                    renderTextRow(grid, row, getPhraseStart(phraseBase, row, width), glyphs, rowBuffers[row - bufferOffset]);
+                    updateProgress(getSampleRow(grid, rowsDone.incrementAndGet() - 1), grid.getSampleHeight());
+                }
+            });
 
-        for (int y = 0; y < sampledImage.getHeight(); y += ratio) {
-            ascii += renderTextRow(sampledImage, y) + "\r\n";
-            updateProgress(y, sampledImage.getHeight());
+            for (int row = windowStart; row < windowEnd; row++) {
+                out.append(rowBuffers[row - windowStart]).append("\r\n");
+            }
         }
 
-        return ascii;
+        advancePhrase((long) rowCount * width);
     }
 
     /**
@@ -166,99 +412,286 @@ public class AsciiRenderer {
      * @return the rendered ASCII art image
      */
     public BufferedImage renderImage(BufferedImage sourceImage) {
-        var sampledImage = (getSamplingParams() != null)
-                ? ImageResizer.getSample(sourceImage, getSamplingParams()) : sourceImage;
+        return renderImage(sample(sourceImage, !getPalette().isOverridingImageColors()));
+    }
+
+    /**
+     * The size and position of everything in a rendered image.
+     */
+    private final class ImageLayout {
+
+        final SampleGrid grid;
+        final GlyphAtlas atlas;
+        final int drawBase; // The position in the phrase the first row starts at
+        final int lineHeight;
+        final int firstBaseline;
+        final int width;
+        final long height;
+        final GlyphColors glyphColors; // Null if the image isn't indexed
+
+        ImageLayout(SampleGrid grid) {
+            this.grid = grid;
+            int sampleWidth = grid.getColumns();
+            int rowCount = grid.getRows();
+            atlas = getPalette().getGlyphAtlas();
+
+            // Images have always been drawn a full image's worth of characters
+            // into the phrase, so keep the phrase where it has always been
+            drawBase = getPhraseStart(phrasePos, rowCount, sampleWidth);
+
+            // Every line is the same height, and with a monospaced font the same
+            // width, so only lines of other fonts need to be measured
+            lineHeight = atlas.getLineHeight();
+            height = (long) rowCount * lineHeight;
+            firstBaseline = lineHeight - 3; // Y position of the text = first row of characters height - offset
+
+            if (atlas.isMonospaced()) {
+                width = sampleWidth * atlas.getAdvance(0);
+            } else {
+                var rowWidths = new int[rowCount];
+                renderRowBands(0, rowCount, (int firstRow, int endRow) -> {
+                    var glyphs = new int[sampleWidth];
+
+                    for (int row = firstRow; row < endRow; row++) {
+                        checkCancelled();
+                        rowWidths[row] = getRowWidth(grid, row, getPhraseStart(drawBase, row, sampleWidth), glyphs, atlas);
+                    }
+                });
+                width = IntStream.of(rowWidths).max().orElse(0);
+            }
 
-        var sourceGraphics = sampledImage.createGraphics();
-        int ratio = getPalette().getFontRatio(sourceGraphics);
+            glyphColors = (indexedOutput && getPalette().isOverridingImageColors())
+                    ? GlyphColors.create(getPalette().getBackgroundColor(), getPalette().getFontColor(), atlas.getCoverageLevels())
+                    : null;
+        }
 
-        // Measure dimensions line by line
-        var dimensions = new ArrayList<Dimension>();
-        for (int y = 0; y < sampledImage.getHeight(); y += ratio) {
-            String line = renderTextRow(sampledImage, y);
-            dimensions.add(getPalette().getStringDimensions(sourceGraphics, line));
+        /**
+         * Create an image the width of the rendered image, filled with the
+         * background.
+         *
+         * @param canvasHeight the height of the image
+         *
+         * @return the image
+         */
+        BufferedImage createCanvas(int canvasHeight) {
+            if (glyphColors == null) {
+                var canvas = new BufferedImage(width, canvasHeight, BufferedImage.TRANSLUCENT);
+                var canvasGraphics = canvas.createGraphics();
+                // Set background color
+                canvasGraphics.setColor(getPalette().getBackgroundColor());
+                canvasGraphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                canvasGraphics.dispose();
+
+                return canvas;
+            } else if (glyphColors.getBitsPerPixel() == 8) {
+                // Index 0 is the background, so the image starts filled with it
+                return new BufferedImage(width, canvasHeight, BufferedImage.TYPE_BYTE_INDEXED, glyphColors.getColorModel());
+            } else {
+                return new BufferedImage(width, canvasHeight, BufferedImage.TYPE_BYTE_BINARY, glyphColors.getColorModel());
+            }
         }
 
-        // Get width and height for image
-        int height = 0;
-        int maxWidth = 0;
-        int dimPos = 0; // Position in the dimensions array
-        int charX = 0; // X position of the text
-        int charY = dimensions.get(0).height - 3; // X position of the text = first row of characters height - offset
+    }
 
-        for (Dimension d : dimensions) {
-            height += d.getHeight();
-            maxWidth = Math.max((int) d.getWidth(), maxWidth);
+    /**
+     * Render an ASCII art image from an image that has already been sampled.
+     *
+     * @param grid the sampled cells, with colors unless the palette overrides
+     * the image colors
+     *
+     * @return the rendered ASCII art image
+     */
+    BufferedImage renderImage(SampleGrid grid) {
+        var layout = new ImageLayout(grid);
+
+        if ((long) layout.width * layout.height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A " + layout.width + "x" + layout.height
+                    + " image is too large to render in memory, so it can only be saved as a PNG");
         }
 
-        var renderImage = new BufferedImage(maxWidth, height, BufferedImage.TRANSLUCENT);
-        var renderGraphics = renderImage.createGraphics();
-        // Set background color
-        renderGraphics.setColor(getPalette().getBackgroundColor());
-        renderGraphics.fillRect(0, 0, renderImage.getWidth(), renderImage.getHeight());
-        for (int y = 0; y < sampledImage.getHeight(); y += ratio) { // Loop through each row of pixels
-            for (int x = 0; x < sampledImage.getWidth(); x++) { // Loop through each pixel in a row
-                Color pixelColor = new Color(sampledImage.getRGB(x, y));
-
-                // Get string associated with the pixel
-                String str;
-                if (getPalette().isUsingPhrase()) {
-                    if (phrasePos >= getPalette().getWeightCount()) {
-                        phrasePos = 0;
+        var renderImage = layout.createCanvas((int) layout.height);
+        drawRows(layout, renderImage, 0, grid.getRows(), new AtomicInteger());
+        advancePhrase((long) grid.getRows() * grid.getColumns() * 2);
+
+        return renderImage;
+    }
+
+    /**
+     * Render an ASCII art image straight into a PNG, a band of rows at a
+     * time. Only one band is ever in memory, so images far too large to
+     * render with {@link #renderImage(BufferedImage)} can still be saved.
+     *
+     * @param sourceImage the image to derive the pixel data from
+     * @param out where to write the PNG
+     *
+     * @throws IOException if there was an error writing the PNG
+     */
+    public void renderPng(BufferedImage sourceImage, OutputStream out) throws IOException {
+        var grid = sample(sourceImage, !getPalette().isOverridingImageColors());
+        var layout = new ImageLayout(grid);
+        var colorModel = (layout.glyphColors != null) ? layout.glyphColors.getColorModel() : null;
+        int rowCount = grid.getRows();
+        int bandRows = (int) Math.max(1, Math.min(rowCount, MAX_BAND_PIXELS / ((long) layout.width * layout.lineHeight)));
+        var rowsDone = new AtomicInteger();
+
+        try (var encoder = createPngEncoder(out, layout.width, Math.toIntExact(layout.height), colorModel)) {
+            for (int firstRow = 0; firstRow < rowCount; firstRow += bandRows) {
+                int endRow = Math.min(rowCount, firstRow + bandRows);
+                var band = layout.createCanvas((endRow - firstRow) * layout.lineHeight);
+
+                drawRows(layout, band, firstRow, endRow, rowsDone);
+                encoder.writeRows(band);
+            }
+        }
+
+        advancePhrase((long) rowCount * grid.getColumns() * 2);
+    }
+
+    /**
+     * Create a PNG encoder with this renderer's compression settings.
+     *
+     * @param out where to write the PNG
+     * @param width the image's width
+     * @param height the image's height
+     * @param colorModel the image's palette, or null for an RGBA image
+     *
+     * @return the encoder
+     *
+     * @throws IOException if there was an error writing the PNG
+     */
+    private PngEncoder createPngEncoder(OutputStream out, int width, int height, IndexColorModel colorModel) throws IOException {
+        var encoder = new PngEncoder(out, width, height, colorModel);
+        encoder.setCompressionLevel(pngCompressionLevel);
+        encoder.setCompressionStrategy(pngCompressionStrategy);
+        if (!parallel) {
+            encoder.setThreadCount(1);
+        }
+
+        return encoder;
+    }
+
+    /**
+     * Draw rows of glyphs into an image that holds just those rows, in
+     * parallel if the renderer is parallel.
+     *
+     * @param layout the layout of the whole rendered image
+     * @param canvas the image, from {@link ImageLayout#createCanvas}, with
+     * the first row's line at the top
+     * @param firstRow the first row of glyphs to draw
+     * @param endRow the row after the last row of glyphs to draw
+     * @param rowsDone the number of rows that have been drawn, for reporting
+     * progress
+     */
+    private void drawRows(ImageLayout layout, BufferedImage canvas, int firstRow, int endRow, AtomicInteger rowsDone) {
+        var grid = layout.grid;
+        var atlas = layout.atlas;
+        int sampleWidth = grid.getColumns();
+        int rowCount = grid.getRows();
+        int lineHeight = layout.lineHeight;
+        int firstBaseline = layout.firstBaseline;
+        int canvasTop = firstRow * lineHeight;
+
+        // Blit the glyphs straight into the image's pixels
+        var dataBuffer = canvas.getRaster().getDataBuffer();
+        var pixelData = (dataBuffer instanceof DataBufferInt intBuffer) ? intBuffer.getData() : null;
+        var byteData = (canvas.getType() == BufferedImage.TYPE_BYTE_INDEXED) ? ((DataBufferByte) dataBuffer).getData() : null;
+        var transitions = (layout.glyphColors != null) ? layout.glyphColors.getTransitions() : null;
+        int fontColor = getPalette().getFontColor().getRGB();
+        int imageWidth = layout.width;
+
+        renderRowBands(firstRow, endRow, (int bandFirstRow, int bandEndRow) -> {
+            // Each band only draws to its own lines, but glyphs can reach
+            // into the lines around them, so draw the neighboring rows too
+            // (in the same order as if it was all drawn at once)
+            int clipTop = bandFirstRow * lineHeight;
+            int clipBottom = bandEndRow * lineHeight;
+            int startRow = bandFirstRow;
+            int stopRow = bandEndRow;
+
+            while (startRow > 0 && firstBaseline + (startRow - 1) * lineHeight + atlas.getMaxDescent() > clipTop) {
+                startRow--;
+            }
+
+            while (stopRow < rowCount && firstBaseline + stopRow * lineHeight - atlas.getMaxAscent() < clipBottom) {
+                stopRow++;
+            }
+
+            var glyphs = new int[sampleWidth];
+
+            // Images with less than a byte per pixel are drawn a byte per
+            // pixel first, then packed
+            var bandIndices = (transitions != null && byteData == null) ? new byte[(clipBottom - clipTop) * imageWidth] : byteData;
+            int dataTop = (bandIndices != byteData) ? clipTop : canvasTop;
+
+            for (int row = startRow; row < stopRow; row++) { // Loop through each row of pixels
+                checkCancelled();
+                int charX = 0; // X position of the text
+                int charY = firstBaseline + row * lineHeight; // Y position of the text
+                getRowGlyphs(grid, row, getPhraseStart(layout.drawBase, row, sampleWidth), glyphs);
+
+                for (int x = 0; x < sampleWidth; x++) { // Loop through each pixel in a row
+                    int glyph = glyphs[x];
+
+                    if (transitions != null) {
+                        atlas.drawGlyph(bandIndices, imageWidth, dataTop, clipTop, clipBottom, glyph, charX, charY, transitions);
+                    } else {
+                        int color = getPalette().isOverridingImageColors() ? fontColor : (grid.getColor(x, row) | 0xFF000000);
+                        atlas.drawGlyph(pixelData, imageWidth, canvasTop, clipTop, clipBottom, glyph, charX, charY, color);
                     }
 
-                    str = getPalette().getWeight(phrasePos);
-                    phrasePos++;
-                } else {
-                    str = getWeight(pixelColor);
+                    charX += atlas.getAdvance(glyph);
                 }
 
-                if (getPalette().isOverridingImageColors()) {
-                    renderGraphics.setColor(getPalette().getFontColor());
-                } else {
-                    renderGraphics.setColor(pixelColor);
+                if (row >= bandFirstRow && row < bandEndRow) {
+                    updateProgress(getSampleRow(grid, rowsDone.incrementAndGet() - 1), grid.getSampleHeight() - 1);
                 }
+            }
 
-                renderGraphics.setFont(getPalette().getFont());
-                renderGraphics.drawString(str, charX, charY);
-
-                charX += getPalette().getStringWidth(renderGraphics, str);
+            if (bandIndices != byteData) {
+                packIndices(bandIndices, canvas, clipTop - canvasTop, clipBottom - canvasTop);
             }
+        });
+    }
 
-            charX = 0;
-            charY += (int) dimensions.get(dimPos).getHeight();
-            dimPos++;
-            updateProgress(y, sampledImage.getHeight() - 1);
+    /**
+     * Pack rows of color indices, one byte per pixel, into an image with
+     * less than a byte per pixel.
+     *
+     * @param indices the color indices of the rows
+     * @param image the image, of type {@link BufferedImage#TYPE_BYTE_BINARY}
+     * @param firstRow the first row to pack
+     * @param endRow the row after the last row to pack
+     */
+    private static void packIndices(byte[] indices, BufferedImage image, int firstRow, int endRow) {
+        var sampleModel = (MultiPixelPackedSampleModel) image.getSampleModel();
+        var data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int bits = sampleModel.getPixelBitStride();
+        int stride = sampleModel.getScanlineStride();
+        int width = image.getWidth();
+
+        for (int y = firstRow; y < endRow; y++) {
+            int rowStart = (y - firstRow) * width;
+            int dataRow = y * stride;
+
+            for (int x = 0; x < width; x++) {
+                int bit = x * bits;
+                int i = dataRow + (bit >>> 3);
+                int shift = 8 - bits - (bit & 7); // Leftmost pixel in the high bits
+                data[i] = (byte) (data[i] | ((indices[rowStart + x] & 0xFF) << shift));
+            }
         }
-
-        return renderImage;
     }
 
     /**
-     * Render an ASCII art GIF derived from another GIF.
+     * Render an ASCII art GIF derived from another GIF, rendering frames in
+     * parallel if this renderer is parallel.
      *
      * @param sourceGif the GIF to derive the pixel data from
      *
      * @return the rendered ASCII art GIF
      */
     public Gif renderGif(Gif sourceGif) {
-        var renderedGif = new Gif(sourceGif);
-        framePos = 0;
-
-        for (int i = 0; i < sourceGif.getFrameCount(); i++) {
-            phrasePos = 0;
-            framePos = i;
-            var currentFrame = sourceGif.getFrameImage(i);
-            var sampledFrame = (getSamplingParams() != null)
-                    ? ImageResizer.getSample(currentFrame, getSamplingParams()) : currentFrame;
-            var renderedFrame = renderImage(sampledFrame);
-
-            renderedGif.setFrameImage(i, renderedFrame);
-        }
-
-        framePos = 0;
-
-        return renderedGif;
+        return new GifRenderer(this).render(sourceGif);
     }
 
     /**
@@ -270,15 +703,14 @@ public class AsciiRenderer {
      * @throws IOException if there was an error writing the file
      */
     public void saveText(String filePath, BufferedImage sourceImage) throws IOException {
-        var renderedText = renderText(sourceImage);
-
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            writer.write(renderedText);
+            renderText(sourceImage, writer);
         }
     }
 
     /**
-     * Render a still image and save it to a file.
+     * Render a still image and save it to a file. PNGs are rendered a band
+     * of rows at a time as they are saved, so they can be any size.
      *
      * @param filePath the file to save to
      * @param sourceImage the source image
@@ -286,13 +718,46 @@ public class AsciiRenderer {
      * @throws IOException if there was an error writing the file
      */
     public void saveImage(String filePath, BufferedImage sourceImage) throws IOException {
-        var outFile = new File(filePath);
-        var render = renderImage(sourceImage);
-        ImageIO.write(render, FileUtil.getExt(filePath, "png"), outFile);
+        var ext = FileUtil.getExt(filePath, "png");
+
+        if (ext.equals("png")) {
+            try (var out = new BufferedOutputStream(new FileOutputStream(filePath), 64 * 1024)) {
+                renderPng(sourceImage, out);
+            }
+        } else {
+            var outFile = new File(filePath);
+            var render = renderImage(sourceImage);
+            ImageIO.write(render, ext, outFile);
+        }
     }
 
     /**
-     * Render a GIF and save it to a file.
+     * Save an image that has already been rendered to a file. PNGs are saved
+     * with this renderer's compression settings.
+     *
+     * @param filePath the file to save to
+     * @param renderedImage the rendered image
+     *
+     * @throws IOException if there was an error writing the file
+     */
+    public void saveRenderedImage(String filePath, BufferedImage renderedImage) throws IOException {
+        var ext = FileUtil.getExt(filePath, "png");
+
+        if (ext.equals("png")) {
+            var colorModel = (renderedImage.getColorModel() instanceof IndexColorModel indexColorModel) ? indexColorModel : null;
+
+            try (var out = new BufferedOutputStream(new FileOutputStream(filePath), 64 * 1024);
+                    var encoder = createPngEncoder(out, renderedImage.getWidth(), renderedImage.getHeight(), colorModel)) {
+                encoder.writeRows(renderedImage);
+            }
+        } else {
+            ImageIO.write(renderedImage, ext, new File(filePath));
+        }
+    }
+
+    /**
+     * Render a GIF and save it to a file, encoding frames as they are
+     * rendered.
      *
      * @param filePath the file to save to
      * @param sourceGif the source GIF
@@ -300,8 +765,20 @@ public class AsciiRenderer {
      * @throws IOException if there was an error writing the file
      */
     public void saveGif(String filePath, Gif sourceGif) throws IOException {
-        var renderedGif = renderGif(sourceGif);
-        renderedGif.save(filePath);
+        new GifRenderer(this).save(sourceGif, filePath);
+    }
+
+    /**
+     * Render a GIF straight into a stream, encoding frames as they are
+     * rendered. The stream isn't closed.
+     *
+     * @param sourceGif the source GIF
+     * @param out where to write the GIF
+     *
+     * @throws IOException if there was an error writing the GIF
+     */
+    public void renderGif(Gif sourceGif, OutputStream out) throws IOException {
+        new GifRenderer(this).save(sourceGif, out);
     }
 
     /**
@@ -318,6 +795,119 @@ public class AsciiRenderer {
         return samplingParams;
     }
 
+    /**
+     * @return if rows are rendered in parallel
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Set if rows should be rendered, and PNGs compressed, in parallel. The
+     * output is the same either way, but the progress watcher may be called from several
+     * threads when rendering in parallel.
+     *
+     * @param parallel if rows should be rendered in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return if images are rendered as indexed images when the palette
+     * overrides the image colors
+     */
+    public boolean isIndexedOutput() {
+        return indexedOutput;
+    }
+
+    /**
+     * Set if images should be rendered as indexed images when the palette
+     * overrides the image colors. Then every pixel is either the background,
+     * the font color, or a blend of the two, so the image can be stored with
+     * 1 to 8 bits per pixel instead of 32, which also makes it faster to
+     * encode. If the blends make more than 256 colors, images are rendered
+     * as usual.
+     *
+     * @param indexedOutput if images should be rendered as indexed images
+     */
+    public void setIndexedOutput(boolean indexedOutput) {
+        this.indexedOutput = indexedOutput;
+    }
+
+    /**
+     * @return the deflate compression level PNGs are saved with
+     */
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    /**
+     * Set how hard to compress PNGs. Lower levels save large images much
+     * faster, for slightly bigger files.
+     *
+     * @param pngCompressionLevel from 0 (no compression) to 9 (best
+     * compression), or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setPngCompressionLevel(int pngCompressionLevel) {
+        this.pngCompressionLevel = pngCompressionLevel;
+    }
+
+    /**
+     * @return the deflate compression strategy PNGs are saved with
+     */
+    public int getPngCompressionStrategy() {
+        return pngCompressionStrategy;
+    }
+
+    /**
+     * Set the deflate compression strategy PNGs are saved with.
+     *
+     * @param pngCompressionStrategy {@link Deflater#DEFAULT_STRATEGY},
+     * {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     *
+     * @see PngEncoder#setCompressionStrategy(int)
+     */
+    public void setPngCompressionStrategy(int pngCompressionStrategy) {
+        this.pngCompressionStrategy = pngCompressionStrategy;
+    }
+
+    /**
+     * @return the cache of recent samples, or null if images are always
+     * sampled
+     */
+    public SampleCache getSampleCache() {
+        return sampleCache;
+    }
+
+    /**
+     * Set a cache of recent samples to reuse, so rendering an image that has
+     * already been sampled the same way, with only the colors or weights
+     * changed, skips sampling it again.
+     *
+     * @param sampleCache the sample cache, or null to always sample images
+     */
+    public void setSampleCache(SampleCache sampleCache) {
+        this.sampleCache = sampleCache;
+    }
+
+    /**
+     * Cancel the renderer. Any render in progress stops at the next row and
+     * throws a {@link CancellationException}, as does every later render, so
+     * a render that is no longer needed can be dropped without wasting time
+     * finishing it.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return if the renderer has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     /**
      * @return the progressWatcher
      */
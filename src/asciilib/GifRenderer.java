@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import giflib.Gif;
+import giflib.GifFrame;
+import giflib.GifSaveProgressWatcher;
+import giflib.GifEncoder;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Render ASCII art GIFs, rendering several frames at once. Every frame gets
+ * its own renderer, so frames don't share any state while rendering.
+ *
+ * @author Ian Martinez
+ */
+public class GifRenderer {
+
+    private final AsciiRenderer renderer;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int maxFramesInFlight = threadCount;
+    private boolean deltaFrames = true;
+    private GifSaveProgressWatcher saveProgressWatcher;
+
+    /**
+     * Create a new GIF renderer.
+     *
+     * @param renderer the renderer with the palette, sampling parameters and
+     * progress watcher to render the frames with
+     */
+    public GifRenderer(AsciiRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Keeps track of the progress of all of the frames being rendered, and
+     * reports it to the renderer's progress watcher as if the frames were
+     * being rendered one after another.
+     */
+    private class FrameProgress {
+
+        private final int[] frameProgress;
+        private long totalProgress = 0;
+
+        FrameProgress(int frameCount) {
+            frameProgress = new int[frameCount];
+        }
+
+        synchronized void update(int frame, int progress, int rowCount) {
+            totalProgress += progress - frameProgress[frame];
+            frameProgress[frame] = progress;
+
+            var watcher = renderer.getProgressWatcher();
+            if (watcher != null && rowCount > 0) {
+                watcher.update((int) (totalProgress % rowCount), rowCount, (int) (totalProgress / rowCount));
+            }
+        }
+
+    }
+
+    /**
+     * The most recently rendered frames of a GIF, by their sampled cells.
+     * Frames that are being rendered are in the cache too, so a frame that is
+     * the same as a frame being rendered on another thread waits for it
+     * instead of rendering it again.
+     */
+    private static final class RenderedFrameCache {
+
+        private static final int MAX_CACHED_FRAMES = 16;
+
+        private final Map<SampleGrid, CompletableFuture<BufferedImage>> frames = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SampleGrid, CompletableFuture<BufferedImage>> eldest) {
+                return size() > MAX_CACHED_FRAMES;
+            }
+        };
+
+    }
+
+    /**
+     * Render a single frame of a GIF with its own renderer. If a frame with
+     * the same sampled cells was rendered recently, it is reused instead.
+     *
+     * @param frameImage the frame's image
+     * @param frame the index of the frame
+     * @param progress the progress of all of the frames
+     * @param cache the recently rendered frames
+     * @param parallelRows if the frame's rows should be rendered in parallel
+     *
+     * @return the rendered frame
+     */
+    private BufferedImage renderFrame(BufferedImage frameImage, int frame, FrameProgress progress,
+            RenderedFrameCache cache, boolean parallelRows) {
+        var frameRenderer = new AsciiRenderer(renderer.getPalette(), renderer.getSamplingParams());
+        frameRenderer.setParallel(parallelRows);
+        frameRenderer.setSampleCache(renderer.getSampleCache());
+        frameRenderer.setIndexedOutput(true); // Smaller, and faster to encode
+
+        var key = frameRenderer.sample(frameImage, !renderer.getPalette().isOverridingImageColors());
+        CompletableFuture<BufferedImage> cachedFrame;
+        var renderedFrame = new CompletableFuture<BufferedImage>();
+
+        synchronized (cache) {
+            cachedFrame = cache.frames.get(key);
+            if (cachedFrame == null) {
+                cache.frames.put(key, renderedFrame);
+            }
+        }
+
+        if (cachedFrame != null) {
+            int rowCount = key.getSampleHeight() - 1;
+            progress.update(frame, rowCount, rowCount);
+
+            return cachedFrame.join();
+        }
+
+        frameRenderer.setProgressWatcher((int rowProgress, int rowCount, int unused) -> {
+            progress.update(frame, rowProgress, rowCount);
+        });
+
+        try {
+            var image = frameRenderer.renderImage(key);
+            renderedFrame.complete(image);
+
+            return image;
+        } catch (RuntimeException | Error ex) {
+            renderedFrame.completeExceptionally(ex);
+
+            synchronized (cache) {
+                cache.frames.remove(key, renderedFrame);
+            }
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Render an ASCII art GIF derived from another GIF. If the renderer isn't
+     * parallel, the frames are rendered one at a time on the calling thread.
+     * Frames that sample to the same cells as a recent frame share its
+     * rendered image.
+     *
+     * @param sourceGif the GIF to derive the pixel data from
+     *
+     * @return the rendered ASCII art GIF
+     */
+    public Gif render(Gif sourceGif) {
+        var renderedGif = new Gif(sourceGif);
+        int frameCount = sourceGif.getFrameCount();
+        var progress = new FrameProgress(frameCount);
+        var cache = new RenderedFrameCache();
+
+        if (!renderer.isParallel() || threadCount <= 1 || frameCount <= 1) {
+            for (int i = 0; i < frameCount; i++) {
+                renderedGif.setFrameImage(i, renderFrame(sourceGif.getFrameImage(i), i, progress, cache, renderer.isParallel()));
+            }
+
+            return renderedGif;
+        }
+
+        var executor = Executors.newFixedThreadPool(Math.min(threadCount, frameCount));
+        var inFlight = new Semaphore(Math.max(1, maxFramesInFlight));
+        var results = new ArrayList<Future<?>>(frameCount);
+
+        try {
+            for (int i = 0; i < frameCount; i++) {
+                final int frame = i;
+                inFlight.acquire();
+
+                // Read the frames in order, since they may be read from the file
+                var frameImage = sourceGif.getFrameImage(frame);
+
+                results.add(executor.submit(() -> {
+                    try {
+                        // Each frame is rendered into its own slot, so the
+                        // frames end up in order no matter when they finish
+                        var renderedFrame = renderFrame(frameImage, frame, progress, cache, false);
+                        renderedGif.setFrameImage(frame, renderedFrame);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            for (var result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering GIF", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw new RuntimeException("Error rendering GIF frame", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return renderedGif;
+    }
+
+    /**
+     * Render an ASCII art GIF derived from another GIF and save it to a file.
+     *
+     * Unlike rendering the whole GIF and then saving it, this runs as a
+     * pipeline: one thread pulls frames out of the source GIF, the frames are
+     * rendered and compressed on the render threads, and the calling thread
+     * writes each frame as soon as it and the frames before it are done. Only a bounded
+     * number of frames are ever in the pipeline, so memory use doesn't grow
+     * with the length of the GIF. If the renderer isn't parallel, each frame
+     * is decoded, rendered and encoded in turn on the calling thread.
+     *
+     * Frames that sample to the same cells as a recent frame aren't rendered
+     * again, and rendered frames that are the same as the frame before them
+     * are merged into it. With delta frames on, every frame after the first
+     * only has the glyph cells that changed from the frame before it.
+     *
+     * @param sourceGif the GIF to derive the pixel data from
+     * @param fileName the file to save to
+     *
+     * @throws IOException if there was an error saving the file
+     */
+    public void save(Gif sourceGif, String fileName) throws IOException {
+        try (var output = new BufferedOutputStream(new FileOutputStream(fileName), 64 * 1024)) {
+            save(sourceGif, output);
+        }
+    }
+
+    /**
+     * Render an ASCII art GIF derived from another GIF and write it to a
+     * stream, the same way as {@link #save(Gif, String)}. The stream isn't
+     * closed.
+     *
+     * @param sourceGif the GIF to derive the pixel data from
+     * @param output where to write the GIF
+     *
+     * @throws IOException if there was an error writing the GIF
+     */
+    public void save(Gif sourceGif, OutputStream output) throws IOException {
+        int frameCount = sourceGif.getFrameCount();
+        var progress = new FrameProgress(frameCount);
+        var cache = new RenderedFrameCache();
+        boolean pipelined = renderer.isParallel() && threadCount > 1 && frameCount > 1;
+
+        var renderExecutor = pipelined ? Executors.newFixedThreadPool(Math.min(threadCount, frameCount)) : null;
+        var decodeExecutor = pipelined ? Executors.newSingleThreadExecutor() : null;
+        var pending = new ArrayBlockingQueue<Future<GifEncoder.EncodedFrame>>(Math.max(1, maxFramesInFlight));
+
+        try (var writer = new GifEncoder(output, sourceGif.getDelay() * 10, true)) { // Delays are in hundredths of a second
+            writer.setDeltaFrames(deltaFrames);
+
+            if (deltaFrames) {
+                var atlas = renderer.getPalette().getGlyphAtlas();
+                int cellWidth = Integer.MAX_VALUE;
+
+                for (int i = 0; i < atlas.getGlyphCount(); i++) {
+                    cellWidth = Math.min(cellWidth, atlas.getAdvance(i));
+                }
+
+                writer.setCellSize(cellWidth, atlas.getLineHeight());
+            }
+
+            if (pipelined) {
+                decodeExecutor.submit(() -> {
+                    CompletableFuture<BufferedImage> previousRender = null;
+
+                    for (int i = 0; i < frameCount; i++) {
+                        final int frame = i;
+
+                        try {
+                            var frameImage = sourceGif.getFrameImage(frame);
+                            int delay = sourceGif.getFrameDelay(frame);
+                            var render = CompletableFuture.supplyAsync(
+                                    () -> renderFrame(frameImage, frame, progress, cache, false), renderExecutor);
+
+                            // Delta frames are encoded once the frame before them is rendered too
+                            if (previousRender == null) {
+                                pending.put(render.thenApplyAsync(
+                                        renderedFrame -> writer.encode(new GifFrame(renderedFrame, delay, null)), renderExecutor));
+                            } else {
+                                pending.put(render.thenCombineAsync(previousRender,
+                                        (renderedFrame, previousFrame) -> writer.encode(new GifFrame(renderedFrame, delay, null), new GifFrame(previousFrame)),
+                                        renderExecutor));
+                            }
+
+                            previousRender = render;
+                        } catch (RuntimeException | Error ex) {
+                            // Hand the error to the encoder in place of the frame
+                            pending.put(CompletableFuture.failedFuture(ex));
+                            break;
+                        }
+                    }
+
+                    return null;
+                });
+            }
+
+            for (int i = 0; i < frameCount; i++) {
+                if (pipelined) {
+                    writer.write(pending.take().get());
+                } else {
+                    var renderedFrame = renderFrame(sourceGif.getFrameImage(i), i, progress, cache, renderer.isParallel());
+                    writer.writeToSequence(new GifFrame(renderedFrame, sourceGif.getFrameDelay(i), null));
+                }
+
+                if (saveProgressWatcher != null) {
+                    saveProgressWatcher.update(i, frameCount);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving GIF", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw new IOException("Error rendering GIF frame", ex.getCause());
+        } finally {
+            if (pipelined) {
+                decodeExecutor.shutdownNow();
+                renderExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads frames are rendered on
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount the number of threads to render frames on
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return the most frames that can be rendering at once
+     */
+    public int getMaxFramesInFlight() {
+        return maxFramesInFlight;
+    }
+
+    /**
+     * Set the most frames that can be rendering at once. This bounds the
+     * memory used by frames that are being sampled and rendered.
+     *
+     * @param maxFramesInFlight the most frames that can be rendering at once
+     */
+    public void setMaxFramesInFlight(int maxFramesInFlight) {
+        this.maxFramesInFlight = maxFramesInFlight;
+    }
+
+    /**
+     * @return true if saved GIFs only write the glyph cells that changed
+     * between frames
+     */
+    public boolean isDeltaFrames() {
+        return deltaFrames;
+    }
+
+    /**
+     * Set if saved GIFs only write the glyph cells that changed between
+     * frames. This makes GIFs with few changes between frames much smaller
+     * and faster to save.
+     *
+     * @param deltaFrames true to only write the changed glyph cells
+     */
+    public void setDeltaFrames(boolean deltaFrames) {
+        this.deltaFrames = deltaFrames;
+    }
+
+    /**
+     * @return the saveProgressWatcher
+     */
+    public GifSaveProgressWatcher getSaveProgressWatcher() {
+        return saveProgressWatcher;
+    }
+
+    /**
+     * @param saveProgressWatcher the watcher to call every time a frame is
+     * saved
+     */
+    public void setSaveProgressWatcher(GifSaveProgressWatcher saveProgressWatcher) {
+        this.saveProgressWatcher = saveProgressWatcher;
+    }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of pre-rasterized glyphs, one alpha mask for every weight in a
+ * palette, that can be blitted straight into an image's raster instead of
+ * laying out and drawing the text of every character cell.
+ *
+ * The masks are rasterized with the same default rendering state that
+ * {@link BufferedImage#createGraphics()} uses, so blitting a glyph gives the
+ * same pixels as calling drawString for it.
+ *
+ * @author Ian Martinez
+ */
+public final class GlyphAtlas {
+
+    private static final int MAX_CACHED_ATLASES = 16;
+    private static final Map<String, GlyphAtlas> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GlyphAtlas> eldest) {
+            return size() > MAX_CACHED_ATLASES;
+        }
+    };
+
+    private final Font font;
+    private final String[] weights;
+    private final int[] advances;
+    private final byte[][] masks; // Alpha coverage of each glyph, row by row
+    private final int[] maskX, maskY; // Offset of each mask from the pen position
+    private final int[] maskWidths, maskHeights;
+    private final int lineHeight;
+    private final boolean monospaced;
+    private int maxAscent, maxDescent; // How far the masks reach above and below the baseline
+
+    /**
+     * Rasterize every weight with a font.
+     *
+     * @param font the font to rasterize with
+     * @param weights the weights to rasterize
+     */
+    private GlyphAtlas(Font font, String[] weights) {
+        this.font = font;
+        this.weights = weights.clone();
+        advances = new int[weights.length];
+        masks = new byte[weights.length][];
+        maskX = new int[weights.length];
+        maskY = new int[weights.length];
+        maskWidths = new int[weights.length];
+        maskHeights = new int[weights.length];
+
+        var measureGraphics = new BufferedImage(1, 1, BufferedImage.TRANSLUCENT).createGraphics();
+        var metrics = measureGraphics.getFontMetrics(font);
+        lineHeight = (int) metrics.getStringBounds(String.join("", weights), measureGraphics).getHeight();
+
+        int maxAdvance = 1;
+        boolean sameAdvances = true;
+        for (int i = 0; i < weights.length; i++) {
+            advances[i] = (int) metrics.getStringBounds(weights[i], measureGraphics).getWidth();
+            maxAdvance = Math.max(maxAdvance, advances[i]);
+            sameAdvances &= advances[i] == advances[0];
+        }
+        measureGraphics.dispose();
+        monospaced = sameAdvances;
+
+        // Leave enough room around the pen position for glyphs that overhang
+        // their advance or the line
+        int pad = Math.max(metrics.getHeight(), font.getSize()) + 2;
+        int originX = pad;
+        int originY = pad + metrics.getMaxAscent();
+        int scratchWidth = maxAdvance + (pad * 2);
+        int scratchHeight = metrics.getHeight() + (pad * 2);
+
+        var scratch = new BufferedImage(scratchWidth, scratchHeight, BufferedImage.TYPE_INT_ARGB);
+        var scratchData = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+
+        for (int i = 0; i < weights.length; i++) {
+            Arrays.fill(scratchData, 0);
+            var g = scratch.createGraphics();
+            g.setColor(Color.WHITE);
+            g.setFont(font);
+            g.drawString(weights[i], originX, originY);
+            g.dispose();
+
+            rasterizeMask(i, scratchData, scratchWidth, scratchHeight, originX, originY);
+        }
+    }
+
+    /**
+     * Crop the drawn glyph out of the scratch image and store its alpha.
+     *
+     * @param glyph the index of the glyph
+     * @param data the scratch image's pixels
+     * @param width the scratch image's width
+     * @param height the scratch image's height
+     * @param originX the x position the glyph was drawn at
+     * @param originY the baseline the glyph was drawn at
+     */
+    private void rasterizeMask(int glyph, int[] data, int width, int height, int originX, int originY) {
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((data[y * width + x] >>> 24) != 0) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+
+        if (maxX < 0) { // Nothing drawn, like a space
+            masks[glyph] = new byte[0];
+            return;
+        }
+
+        int w = maxX - minX + 1;
+        int h = maxY - minY + 1;
+        var mask = new byte[w * h];
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                mask[y * w + x] = (byte) (data[(y + minY) * width + x + minX] >>> 24);
+            }
+        }
+
+        masks[glyph] = mask;
+        maskX[glyph] = minX - originX;
+        maskY[glyph] = minY - originY;
+        maskWidths[glyph] = w;
+        maskHeights[glyph] = h;
+        maxAscent = Math.max(maxAscent, -maskY[glyph]);
+        maxDescent = Math.max(maxDescent, maskY[glyph] + h);
+    }
+
+    /**
+     * Get the atlas for a font and set of weights, rasterizing it if it hasn't
+     * been used recently.
+     *
+     * @param font the font
+     * @param weights the weights
+     *
+     * @return the glyph atlas
+     */
+    public static GlyphAtlas get(Font font, String[] weights) {
+        var key = font.getFontName() + "|" + font.getStyle() + "|" + font.getSize2D() + "|" + String.join("\u0000", weights);
+
+        synchronized (cache) {
+            var atlas = cache.get(key);
+
+            if (atlas == null || !atlas.font.equals(font)) {
+                atlas = new GlyphAtlas(font, weights);
+                cache.put(key, atlas);
+            }
+
+            return atlas;
+        }
+    }
+
+    /**
+     * Draw a glyph into the pixels of an image of type
+     * {@link BufferedImage#TYPE_INT_ARGB_PRE}, blending it over what is
+     * already there. Parts of the glyph outside of the image's width or the
+     * clip rows are clipped.
+     *
+     * @param data the image's pixels
+     * @param width the image's width
+     * @param dataTop the row of pixels the data starts at
+     * @param clipTop the first row of pixels that can be drawn to
+     * @param clipBottom the row of pixels after the last that can be drawn to
+     * @param glyph the index of the glyph to draw
+     * @param x the x position of the pen
+     * @param y the baseline to draw the glyph on
+     * @param argb the (non-premultiplied) color to draw the glyph with
+     */
+    public void drawGlyph(int[] data, int width, int dataTop, int clipTop, int clipBottom, int glyph, int x, int y, int argb) {
+        var mask = masks[glyph];
+        int w = maskWidths[glyph];
+        int h = maskHeights[glyph];
+        int left = x + maskX[glyph];
+        int top = y + maskY[glyph];
+
+        int startX = Math.max(0, -left);
+        int startY = Math.max(0, clipTop - top);
+        int endX = Math.min(w, width - left);
+        int endY = Math.min(h, clipBottom - top);
+
+        for (int my = startY; my < endY; my++) {
+            int maskRow = my * w;
+            int dataRow = (top + my - dataTop) * width + left;
+
+            for (int mx = startX; mx < endX; mx++) {
+                int coverage = mask[maskRow + mx] & 0xFF;
+
+                if (coverage != 0) {
+                    data[dataRow + mx] = blend(data[dataRow + mx], argb, coverage);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw a glyph into the color indices of an indexed image, where the
+     * color a pixel becomes depends only on the color it was and the glyph's
+     * coverage of it. Parts of the glyph outside of the image's width or the
+     * clip rows are clipped.
+     *
+     * @param data the image's color indices, one byte per pixel
+     * @param width the image's width
+     * @param dataTop the row of pixels the data starts at
+     * @param clipTop the first row of pixels that can be drawn to
+     * @param clipBottom the row of pixels after the last that can be drawn to
+     * @param glyph the index of the glyph to draw
+     * @param x the x position of the pen
+     * @param y the baseline to draw the glyph on
+     * @param transitions the index each index becomes for each coverage, at
+     * (index * 256) + coverage
+     */
+    public void drawGlyph(byte[] data, int width, int dataTop, int clipTop, int clipBottom, int glyph, int x, int y, byte[] transitions) {
+        var mask = masks[glyph];
+        int w = maskWidths[glyph];
+        int h = maskHeights[glyph];
+        int left = x + maskX[glyph];
+        int top = y + maskY[glyph];
+
+        int startX = Math.max(0, -left);
+        int startY = Math.max(0, clipTop - top);
+        int endX = Math.min(w, width - left);
+        int endY = Math.min(h, clipBottom - top);
+
+        for (int my = startY; my < endY; my++) {
+            int maskRow = my * w;
+            int dataRow = (top + my - dataTop) * width + left;
+
+            for (int mx = startX; mx < endX; mx++) {
+                int coverage = mask[maskRow + mx] & 0xFF;
+
+                if (coverage != 0) {
+                    data[dataRow + mx] = transitions[((data[dataRow + mx] & 0xFF) << 8) | coverage];
+                }
+            }
+        }
+    }
+
+    /**
+     * Blend a color over a premultiplied pixel, the way a glyph is drawn.
+     *
+     * @param dst the (premultiplied) pixel
+     * @param argb the (non-premultiplied) color to draw with
+     * @param coverage how much of the pixel the glyph covers
+     *
+     * @return the blended (premultiplied) pixel
+     */
+    static int blend(int dst, int argb, int coverage) {
+        int srcA = mul8(coverage, argb >>> 24);
+
+        if (srcA == 0xFF) {
+            return argb;
+        } else if (srcA == 0) {
+            return dst;
+        }
+
+        int dstF = 0xFF - srcA;
+        int a = srcA + mul8(dstF, dst >>> 24);
+        int r = mul8(srcA, (argb >>> 16) & 0xFF) + mul8(dstF, (dst >>> 16) & 0xFF);
+        int g = mul8(srcA, (argb >>> 8) & 0xFF) + mul8(dstF, (dst >>> 8) & 0xFF);
+        int b = mul8(srcA, argb & 0xFF) + mul8(dstF, dst & 0xFF);
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Multiply two 8-bit fractions.
+     *
+     * @param a the first value
+     * @param b the second value
+     *
+     * @return a * b / 255, rounded
+     */
+    private static int mul8(int a, int b) {
+        int t = a * b + 0x80;
+        return ((t >>> 8) + t) >>> 8;
+    }
+
+    /**
+     * Get the horizontal advance of a glyph, as measured by
+     * {@link Palette#getStringWidth}.
+     *
+     * @param glyph the index of the glyph
+     *
+     * @return the advance
+     */
+    public int getAdvance(int glyph) {
+        return advances[glyph];
+    }
+
+    /**
+     * Get every coverage value that is in any of the glyphs, other than no
+     * coverage at all.
+     *
+     * @return the coverage values
+     */
+    public int[] getCoverageLevels() {
+        var used = new boolean[256];
+
+        for (var mask : masks) {
+            for (byte coverage : mask) {
+                used[coverage & 0xFF] = true;
+            }
+        }
+
+        int count = 0;
+        var levels = new int[255];
+        for (int coverage = 1; coverage < 256; coverage++) {
+            if (used[coverage]) {
+                levels[count++] = coverage;
+            }
+        }
+
+        return Arrays.copyOf(levels, count);
+    }
+
+    /**
+     * @return the furthest any glyph reaches above the baseline
+     */
+    public int getMaxAscent() {
+        return maxAscent;
+    }
+
+    /**
+     * @return the furthest any glyph reaches below the baseline
+     */
+    public int getMaxDescent() {
+        return maxDescent;
+    }
+
+    /**
+     * @return if every glyph has the same advance, so every line with the
+     * same number of glyphs is the same width
+     */
+    public boolean isMonospaced() {
+        return monospaced;
+    }
+
+    /**
+     * @return the height of a line of glyphs
+     */
+    public int getLineHeight() {
+        return lineHeight;
+    }
+
+    /**
+     * @return the number of glyphs
+     */
+    public int getGlyphCount() {
+        return weights.length;
+    }
+
+    /**
+     * @return the font
+     */
+    public Font getFont() {
+        return font;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * Every color an image can have when glyphs of one color are drawn over one
+ * background color: the background, and every color that drawing glyphs with
+ * the atlas' coverage levels over those colors makes. Each color gets an
+ * index, so the image can be drawn as indices by looking up the index each
+ * index becomes for each coverage.
+ *
+ * @author Ian Martinez
+ */
+final class GlyphColors {
+
+    private static final int MAX_COLORS = 256;
+
+    private final int[] colors; // Premultiplied, with the background first
+    private final byte[] transitions; // The index each index becomes, at (index * 256) + coverage
+
+    private GlyphColors(int[] colors, byte[] transitions) {
+        this.colors = colors;
+        this.transitions = transitions;
+    }
+
+    /**
+     * Find every color that drawing glyphs over a background can make.
+     *
+     * @param backgroundColor the background color
+     * @param fontColor the color the glyphs are drawn with
+     * @param coverageLevels the coverage values in the glyphs
+     *
+     * @return the colors, or null if there are more than fit in an indexed
+     * image
+     */
+    static GlyphColors create(Color backgroundColor, Color fontColor, int[] coverageLevels) {
+        var colors = new int[MAX_COLORS];
+        var transitions = new byte[MAX_COLORS * 256];
+        int fontArgb = fontColor.getRGB();
+
+        colors[0] = getBackgroundPixel(backgroundColor);
+        int colorCount = 1;
+
+        // Each new color is blended with every coverage level in turn, until
+        // no more new colors are made
+        for (int index = 0; index < colorCount; index++) {
+            for (int coverage : coverageLevels) {
+                int blended = GlyphAtlas.blend(colors[index], fontArgb, coverage);
+                int blendedIndex = indexOf(colors, colorCount, blended);
+
+                if (blendedIndex < 0) {
+                    if (colorCount == MAX_COLORS) {
+                        return null;
+                    }
+
+                    blendedIndex = colorCount;
+                    colors[colorCount++] = blended;
+                }
+
+                transitions[(index << 8) | coverage] = (byte) blendedIndex;
+            }
+        }
+
+        return new GlyphColors(Arrays.copyOf(colors, colorCount), transitions);
+    }
+
+    /**
+     * Get the pixel the background is filled with, the same way it is filled
+     * in a {@link BufferedImage#TRANSLUCENT} image.
+     *
+     * @param backgroundColor the background color
+     *
+     * @return the (premultiplied) background pixel
+     */
+    private static int getBackgroundPixel(Color backgroundColor) {
+        var pixel = new BufferedImage(1, 1, BufferedImage.TRANSLUCENT);
+        var g = pixel.createGraphics();
+        g.setColor(backgroundColor);
+        g.fillRect(0, 0, 1, 1);
+        g.dispose();
+
+        return ((DataBufferInt) pixel.getRaster().getDataBuffer()).getData()[0];
+    }
+
+    private static int indexOf(int[] colors, int count, int color) {
+        for (int i = 0; i < count; i++) {
+            if (colors[i] == color) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Create a color model with every color.
+     *
+     * @return the color model
+     */
+    IndexColorModel getColorModel() {
+        int count = colors.length;
+        var r = new byte[count];
+        var g = new byte[count];
+        var b = new byte[count];
+        var a = new byte[count];
+
+        for (int i = 0; i < count; i++) {
+            int alpha = colors[i] >>> 24;
+            a[i] = (byte) alpha;
+
+            if (alpha != 0) { // Undo the premultiplication
+                r[i] = (byte) Math.min(255, (((colors[i] >>> 16) & 0xFF) * 255 + alpha / 2) / alpha);
+                g[i] = (byte) Math.min(255, (((colors[i] >>> 8) & 0xFF) * 255 + alpha / 2) / alpha);
+                b[i] = (byte) Math.min(255, ((colors[i] & 0xFF) * 255 + alpha / 2) / alpha);
+            }
+        }
+
+        return new IndexColorModel(getBitsPerPixel(), count, r, g, b, a);
+    }
+
+    /**
+     * @return the fewest bits per pixel an image with these colors can have:
+     * 1, 2, 4 or 8
+     */
+    int getBitsPerPixel() {
+        int bits = 1;
+        while ((1 << bits) < colors.length) {
+            bits *= 2;
+        }
+
+        return bits;
+    }
+
+    /**
+     * @return the index each index becomes when drawn over, at
+     * (index * 256) + coverage
+     */
+    byte[] getTransitions() {
+        return transitions;
+    }
+
+}
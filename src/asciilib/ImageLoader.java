@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Static class to load source images at only the resolution they will be
+ * sampled at. Huge images are decoded with the image reader's subsampling, so
+ * only every few pixels are ever stored, and the memory used depends on the
+ * number of samples instead of the size of the file.
+ *
+ * @author Ian Martinez
+ */
+public final class ImageLoader {
+
+    // The fewest pixels across each sample that a subsampled image keeps, so
+    // samples still average several pixels
+    private static final int MIN_PIXELS_PER_SAMPLE = 4;
+
+    private ImageLoader() { } // No constructor
+
+    /**
+     * Get the size of an image without decoding it.
+     *
+     * @param file the image file
+     *
+     * @return the image's full size
+     *
+     * @throws IOException if the file couldn't be read or isn't an image
+     */
+    public static Dimension getSize(File file) throws IOException {
+        try (var input = openStream(file)) {
+            var reader = getReader(input, file);
+
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Get how much an image can be subsampled by before it is sampled, while
+     * still keeping a few pixels across each sample.
+     *
+     * @param params the sampling parameters the image will be sampled with,
+     * for the image's full size
+     *
+     * @return the subsampling, where 1 keeps every pixel, 2 keeps every other
+     * pixel, and so on
+     */
+    public static int getSubsampling(ImageSamplingParams params) {
+        double sampleSize = params.getOriginalWidth() / Math.max(1, params.getSampleWidth());
+        return Math.max(1, (int) (sampleSize / MIN_PIXELS_PER_SAMPLE));
+    }
+
+    /**
+     * Read an image, keeping only every few pixels in each direction. The
+     * pixels that are skipped are never stored.
+     *
+     * @param file the image file
+     * @param subsampling the subsampling, where 1 reads the whole image
+     *
+     * @return the subsampled image
+     *
+     * @throws IOException if the file couldn't be read or isn't an image
+     */
+    public static BufferedImage read(File file, int subsampling) throws IOException {
+        try (var input = openStream(file)) {
+            var reader = getReader(input, file);
+
+            try {
+                var param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Read an image at the resolution it will be sampled at.
+     *
+     * @param file the image file
+     * @param params the sampling parameters the image will be sampled with,
+     * for the image's full size
+     *
+     * @return the subsampled image
+     *
+     * @throws IOException if the file couldn't be read or isn't an image
+     */
+    public static BufferedImage read(File file, ImageSamplingParams params) throws IOException {
+        return read(file, getSubsampling(params));
+    }
+
+    private static ImageInputStream openStream(File file) throws IOException {
+        var input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Couldn't open " + file);
+        }
+
+        return input;
+    }
+
+    private static ImageReader getReader(ImageInputStream input, File file) throws IOException {
+        var readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("No image reader for " + file);
+        }
+
+        var reader = readers.next();
+        reader.setInput(input, true, true);
+
+        return reader;
+    }
+
+}
@@ -130,4 +130,18 @@ public class ImageSamplingParams {
         this.samplingRatio = samplingRatio;
     }
 
+    /**
+     * Copy the parameters with a different sampling ratio.
+     *
+     * @param samplingRatio the sampling ratio of the copy
+     *
+     * @return the copy
+     */
+    public ImageSamplingParams withSamplingRatio(double samplingRatio) {
+        var copy = new ImageSamplingParams(originalWidth, originalHeight, fontWidth, fontHeight);
+        copy.setSamplingRatio(samplingRatio);
+
+        return copy;
+    }
+
 }
@@ -193,6 +193,45 @@ public class Palette {
         return weights[pos];
     }
 
+    /**
+     * Get the index of the weight for a color, from the color's luminance.
+     * Darker colors get lower indexes. The alpha is ignored.
+     *
+     * @param rgb the color, as an (A)RGB int
+     *
+     * @return the weight index for the color
+     */
+    public int getWeightIndex(int rgb) {
+        int red = (rgb >>> 16) & 0xFF;
+        int green = (rgb >>> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+        float luminance = (red * 0.2126f + green * 0.7152f + blue * 0.0722f) / 255;
+
+        return getWeightIndex(luminance);
+    }
+
+    /**
+     * Get the index of the weight for a luminance, like a cell's luminance
+     * in a {@link SampleGrid}.
+     *
+     * @param luminance the luminance, from 0 to 1
+     *
+     * @return the weight index for the luminance
+     */
+    public int getWeightIndex(float luminance) {
+        int max = weights.length - 1;
+        return Math.max(0, Math.min(max, (int) (max * luminance)));
+    }
+
+    /**
+     * Get the pre-rasterized glyphs for this palette's font and weights.
+     *
+     * @return the glyph atlas
+     */
+    public GlyphAtlas getGlyphAtlas() {
+        return GlyphAtlas.get(font, weights);
+    }
+
     /**
      * Get the ratio between the font height and the font width.
      *
@@ -0,0 +1,780 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG a band of rows at a time, so an image can be saved without
+ * ever being in memory all at once. The image is either 8-bit RGBA, or
+ * indexed with a 1, 2, 4 or 8-bit palette.
+ *
+ * The rows are compressed in independent blocks on several threads, the way
+ * pigz does: each block is primed with the end of the block before it, so it
+ * compresses nearly as well as one stream, and the blocks join into a single
+ * zlib stream. The output is the same no matter how many threads are used.
+ *
+ * @author Ian Martinez
+ */
+public final class PngEncoder implements AutoCloseable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+    private static final int BLOCK_SIZE = 256 * 1024; // Uncompressed bytes in each block
+    private static final int DICTIONARY_SIZE = 32 * 1024; // The most deflate can look back
+
+    // Row filter types
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private final OutputStream output;
+    private final int width;
+    private final int height;
+    private final IndexColorModel colorModel; // Null for RGBA
+    private final int bytesPerPixel; // For filtering, at least 1
+    private final int rowSize; // Without the filter type byte
+
+    private final int blockRows; // Rows in each block
+    private final int dictionaryRows; // Rows before a block that its dictionary comes from
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    private final ChunkOutputStream imageData = new ChunkOutputStream("IDAT");
+    private ExecutorService executor; // Null until the first block, or if compressing on the calling thread
+    private final ArrayDeque<Future<CompressedBlock>> pending = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> recentRows = new ArrayDeque<>(); // The rows before the current block
+    private final ArrayList<byte[]> blockRowData = new ArrayList<>();
+    private long adler = 1; // Adler-32 of the uncompressed data so far
+    private boolean started = false;
+    private int rowsWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * A block of rows that has been filtered and compressed.
+     */
+    private static final class CompressedBlock {
+
+        final byte[] data;
+        final long adler; // Of the block's uncompressed data
+        final long length; // Of the block's uncompressed data
+
+        CompressedBlock(byte[] data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * Start writing an RGBA PNG.
+     *
+     * @param output where to write the PNG
+     * @param width the image's width
+     * @param height the image's height
+     *
+     * @throws IOException if there was an error writing the header
+     */
+    public PngEncoder(OutputStream output, int width, int height) throws IOException {
+        this(output, width, height, null);
+    }
+
+    /**
+     * Start writing a PNG.
+     *
+     * @param output where to write the PNG
+     * @param width the image's width
+     * @param height the image's height
+     * @param colorModel the palette of an indexed image, with 1, 2, 4 or 8
+     * bits per pixel, or null for an RGBA image
+     *
+     * @throws IOException if there was an error writing the header
+     */
+    public PngEncoder(OutputStream output, int width, int height, IndexColorModel colorModel) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("A PNG must be at least 1x1, not " + width + "x" + height);
+        }
+
+        this.output = output;
+        this.width = width;
+        this.height = height;
+        this.colorModel = colorModel;
+
+        int bitDepth = (colorModel != null) ? colorModel.getPixelSize() : 8;
+        bytesPerPixel = (colorModel != null) ? 1 : 4;
+        rowSize = (colorModel != null) ? (int) (((long) width * bitDepth + 7) / 8) : Math.multiplyExact(width, 4);
+
+        blockRows = Math.max(1, BLOCK_SIZE / (rowSize + 1));
+        dictionaryRows = (DICTIONARY_SIZE + rowSize) / (rowSize + 1);
+
+        output.write(SIGNATURE);
+        writeHeader(bitDepth);
+    }
+
+    /**
+     * Write the IHDR chunk, and the palette of an indexed image.
+     *
+     * @param bitDepth the bits in each channel, or in each index
+     *
+     * @throws IOException if there was an error writing
+     */
+    private void writeHeader(int bitDepth) throws IOException {
+        var header = new ByteArrayOutputStream(13);
+        writeInt(header, width);
+        writeInt(header, height);
+        header.write(bitDepth);
+        header.write((colorModel != null) ? 3 : 6); // Indexed or RGBA
+        header.write(0); // Deflate
+        header.write(0); // Adaptive filtering
+        header.write(0); // Not interlaced
+        writeChunk("IHDR", header.toByteArray());
+
+        if (colorModel != null) {
+            int size = colorModel.getMapSize();
+            var palette = new byte[size * 3];
+            var alphas = new byte[size];
+            int lastTranslucent = -1;
+
+            for (int i = 0; i < size; i++) {
+                palette[i * 3] = (byte) colorModel.getRed(i);
+                palette[i * 3 + 1] = (byte) colorModel.getGreen(i);
+                palette[i * 3 + 2] = (byte) colorModel.getBlue(i);
+                alphas[i] = (byte) colorModel.getAlpha(i);
+
+                if (colorModel.getAlpha(i) != 255) {
+                    lastTranslucent = i;
+                }
+            }
+
+            writeChunk("PLTE", palette);
+
+            if (lastTranslucent >= 0) { // Entries after the last translucent one are opaque
+                writeChunk("tRNS", Arrays.copyOf(alphas, lastTranslucent + 1));
+            }
+        }
+    }
+
+    /**
+     * Write the next rows of the image. The rows must be the width of the
+     * PNG. For an indexed PNG, they must be indexed with the same palette
+     * and bits per pixel.
+     *
+     * @param rows the rows, as a {@link BufferedImage#TYPE_INT_ARGB_PRE} or
+     * {@link BufferedImage#TYPE_INT_ARGB} image for an RGBA PNG, or as a
+     * {@link BufferedImage#TYPE_BYTE_INDEXED} or
+     * {@link BufferedImage#TYPE_BYTE_BINARY} image for an indexed PNG
+     *
+     * @throws IOException if there was an error writing the rows
+     */
+    public void writeRows(BufferedImage rows) throws IOException {
+        if (rows.getWidth() != width) {
+            throw new IllegalArgumentException("Rows are " + rows.getWidth() + " pixels wide, not " + width);
+        }
+        if (rowsWritten + rows.getHeight() > height) {
+            throw new IllegalStateException("More rows than the " + height + " in the PNG");
+        }
+
+        if (!started) {
+            start();
+        }
+
+        for (int y = 0; y < rows.getHeight(); y++) {
+            var row = new byte[rowSize];
+
+            if (colorModel != null) {
+                readIndexedRow(rows, y, row);
+            } else {
+                readRgbaRow(rows, y, row);
+            }
+
+            blockRowData.add(row);
+            rowsWritten++;
+
+            if (blockRowData.size() == blockRows && rowsWritten < height) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Start the image data, once the compression settings can't change.
+     *
+     * @throws IOException if there was an error writing
+     */
+    private void start() throws IOException {
+        started = true;
+
+        // The zlib header, with the compression level as a hint
+        int levelFlag = switch (compressionLevel) {
+            case 0, 1 -> 0;
+            case 2, 3, 4, 5 -> 1;
+            case 6, Deflater.DEFAULT_COMPRESSION -> 2;
+            default -> 3;
+        };
+        int header = (0x78 << 8) | (levelFlag << 6);
+        header += 31 - (header % 31);
+        imageData.write(header >>> 8);
+        imageData.write(header & 0xFF);
+
+        if (threadCount > 1 && (long) height > blockRows) {
+            executor = Executors.newFixedThreadPool(threadCount);
+        }
+    }
+
+    /**
+     * Compress the current block of rows, on another thread if there is more
+     * than one, and write out the blocks that are done.
+     *
+     * @param last if this is the last block
+     *
+     * @throws IOException if there was an error writing
+     */
+    private void submitBlock(boolean last) throws IOException {
+        var rows = blockRowData.toArray(byte[][]::new);
+        var previousRows = recentRows.toArray(byte[][]::new);
+        blockRowData.clear();
+
+        // Remember the rows this block's dictionary comes from for the next
+        // block, and the row before them to filter them with
+        for (var row : rows) {
+            recentRows.addLast(row);
+            if (recentRows.size() > dictionaryRows + 1) {
+                recentRows.removeFirst();
+            }
+        }
+
+        Callable<CompressedBlock> task = () -> compressBlock(previousRows, rows, last);
+
+        if (executor == null) {
+            writeBlock(runBlock(task));
+        } else {
+            pending.addLast(executor.submit(task));
+
+            // Keep every thread busy, without letting blocks pile up
+            while (pending.size() > threadCount * 2 || (last && !pending.isEmpty())) {
+                writeBlock(waitForBlock(pending.removeFirst()));
+            }
+        }
+    }
+
+    private static CompressedBlock runBlock(Callable<CompressedBlock> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Error compressing PNG", ex);
+        }
+    }
+
+    private static CompressedBlock waitForBlock(Future<CompressedBlock> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing PNG", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw new IOException("Error compressing PNG", ex.getCause());
+        }
+    }
+
+    private void writeBlock(CompressedBlock block) throws IOException {
+        imageData.write(block.data, 0, block.data.length);
+        adler = combineAdler(adler, block.adler, block.length);
+    }
+
+    /**
+     * Filter and compress a block of rows.
+     *
+     * @param previousRows the rows before the block, the last of which
+     * the block's dictionary comes from
+     * @param rows the rows in the block
+     * @param last if this is the last block
+     *
+     * @return the compressed block
+     */
+    private CompressedBlock compressBlock(byte[][] previousRows, byte[][] rows, boolean last) {
+        var filtered = new byte[5][rowSize + 1];
+        for (int i = 0; i < filtered.length; i++) {
+            filtered[i][0] = (byte) i;
+        }
+
+        var deflater = new Deflater(compressionLevel, true);
+        deflater.setStrategy(compressionStrategy);
+        var adler32 = new Adler32();
+        var out = new ByteArrayOutputStream(BLOCK_SIZE / 2);
+        var buffer = new byte[MAX_CHUNK_SIZE];
+
+        try {
+            // Filter the rows before the block again, to get the end of the
+            // data the block before this one compressed
+            byte[] previousRow = (previousRows.length > dictionaryRows) ? previousRows[0] : new byte[rowSize];
+            var dictionary = new ByteArrayOutputStream();
+
+            for (int i = previousRows.length - Math.min(previousRows.length, dictionaryRows); i < previousRows.length; i++) {
+                dictionary.writeBytes(filterRow(previousRows[i], previousRow, filtered));
+                previousRow = previousRows[i];
+            }
+
+            var dictionaryBytes = dictionary.toByteArray();
+            if (dictionaryBytes.length > 0) {
+                int length = Math.min(DICTIONARY_SIZE, dictionaryBytes.length);
+                deflater.setDictionary(dictionaryBytes, dictionaryBytes.length - length, length);
+            }
+
+            for (var row : rows) {
+                var filteredRow = filterRow(row, previousRow, filtered);
+                previousRow = row;
+
+                adler32.update(filteredRow);
+                deflater.setInput(filteredRow);
+                while (!deflater.needsInput()) {
+                    out.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH));
+                }
+            }
+
+            // End on a byte boundary, so the next block can start right after
+            // this one
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+
+            return new CompressedBlock(out.toByteArray(), adler32.getValue(), (long) rows.length * (rowSize + 1));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Get the Adler-32 of two pieces of data one after the other, from the
+     * Adler-32 of each piece, the way zlib's adler32_combine does.
+     *
+     * @param adler1 the Adler-32 of the first piece
+     * @param adler2 the Adler-32 of the second piece
+     * @param length2 the length of the second piece
+     *
+     * @return the combined Adler-32
+     */
+    private static long combineAdler(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % base;
+
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= base * 2) {
+            sum2 -= base * 2;
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Copy a row of color indices. Rows that are already packed the way a
+     * PNG packs them are copied straight from the image's data, and other
+     * rows, like rows of a subimage that don't start on a byte, are packed
+     * one index at a time.
+     *
+     * @param image the image
+     * @param y the row
+     * @param row the buffer to copy the row into
+     */
+    private void readIndexedRow(BufferedImage image, int y, byte[] row) {
+        var raster = image.getRaster();
+        int bitDepth = colorModel.getPixelSize();
+
+        // Where the row starts in the data, which a subimage shares with its parent
+        int sampleX = -raster.getSampleModelTranslateX();
+        int sampleY = y - raster.getSampleModelTranslateY();
+        int offset = switch (raster.getSampleModel()) {
+            case MultiPixelPackedSampleModel sampleModel when sampleModel.getPixelBitStride() == bitDepth
+                    && sampleModel.getBitOffset(sampleX) == 0 ->
+                sampleModel.getOffset(sampleX, sampleY);
+            case ComponentSampleModel sampleModel when bitDepth == 8 && sampleModel.getNumBands() == 1
+                    && sampleModel.getPixelStride() == 1 ->
+                sampleModel.getOffset(sampleX, sampleY);
+            default ->
+                -1;
+        };
+
+        if (offset >= 0 && raster.getDataBuffer() instanceof DataBufferByte buffer) {
+            System.arraycopy(buffer.getData(), buffer.getOffset() + offset, row, 0, rowSize);
+            return;
+        }
+
+        var indices = raster.getSamples(0, y, width, 1, 0, (int[]) null);
+        int mask = (1 << bitDepth) - 1;
+        Arrays.fill(row, (byte) 0);
+
+        for (int x = 0; x < width; x++) {
+            int bit = x * bitDepth;
+            int i = bit >>> 3;
+            row[i] = (byte) (row[i] | ((indices[x] & mask) << (8 - bitDepth - (bit & 7))));
+        }
+    }
+
+    /**
+     * Convert a row of pixels to RGBA bytes.
+     *
+     * @param image the image
+     * @param y the row
+     * @param row the buffer to convert the row into
+     */
+    private void readRgbaRow(BufferedImage image, int y, byte[] row) {
+        var raster = image.getRaster();
+        boolean premultiplied = image.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+        int[] pixels;
+        int offset;
+
+        if ((premultiplied || image.getType() == BufferedImage.TYPE_INT_ARGB)
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                && raster.getDataBuffer() instanceof DataBufferInt buffer) {
+            // Where the row starts in the data, which a subimage shares with its parent
+            pixels = buffer.getData();
+            offset = buffer.getOffset() + sampleModel.getOffset(-raster.getSampleModelTranslateX(), y - raster.getSampleModelTranslateY());
+        } else {
+            pixels = image.getRGB(0, y, width, 1, null, 0, width);
+            offset = 0;
+            premultiplied = false; // getRGB() isn't premultiplied
+        }
+
+        for (int x = 0; x < width; x++) {
+            int argb = pixels[offset + x];
+            int alpha = argb >>> 24;
+            int red = (argb >>> 16) & 0xFF;
+            int green = (argb >>> 8) & 0xFF;
+            int blue = argb & 0xFF;
+
+            if (premultiplied && alpha != 255) {
+                if (alpha == 0) {
+                    red = green = blue = 0;
+                } else {
+                    red = Math.min(255, (red * 255 + alpha / 2) / alpha);
+                    green = Math.min(255, (green * 255 + alpha / 2) / alpha);
+                    blue = Math.min(255, (blue * 255 + alpha / 2) / alpha);
+                }
+            }
+
+            int i = x * 4;
+            row[i] = (byte) red;
+            row[i + 1] = (byte) green;
+            row[i + 2] = (byte) blue;
+            row[i + 3] = (byte) alpha;
+        }
+    }
+
+    /**
+     * Filter the current row. Indexed rows aren't filtered, since filters
+     * rarely help them. RGBA rows get whichever filter leaves the smallest
+     * sum of differences, which usually compresses best.
+     *
+     * @param row the row
+     * @param previousRow the row before it, or zeros for the first row
+     * @param filtered a buffer for each filter type, starting with the type
+     *
+     * @return the filter type, followed by the filtered row
+     */
+    private byte[] filterRow(byte[] row, byte[] previousRow, byte[][] filtered) {
+        if (colorModel != null) {
+            System.arraycopy(row, 0, filtered[FILTER_NONE], 1, rowSize);
+            return filtered[FILTER_NONE];
+        }
+
+        long[] sums = new long[5];
+        int bpp = bytesPerPixel;
+
+        for (int i = 0; i < rowSize; i++) {
+            int current = row[i] & 0xFF;
+            int left = (i >= bpp) ? row[i - bpp] & 0xFF : 0;
+            int up = previousRow[i] & 0xFF;
+            int upLeft = (i >= bpp) ? previousRow[i - bpp] & 0xFF : 0;
+
+            byte none = (byte) current;
+            byte sub = (byte) (current - left);
+            byte upFiltered = (byte) (current - up);
+            byte average = (byte) (current - ((left + up) >>> 1));
+            byte paeth = (byte) (current - paethPredictor(left, up, upLeft));
+
+            filtered[FILTER_NONE][i + 1] = none;
+            filtered[FILTER_SUB][i + 1] = sub;
+            filtered[FILTER_UP][i + 1] = upFiltered;
+            filtered[FILTER_AVERAGE][i + 1] = average;
+            filtered[FILTER_PAETH][i + 1] = paeth;
+
+            sums[FILTER_NONE] += Math.abs(none);
+            sums[FILTER_SUB] += Math.abs(sub);
+            sums[FILTER_UP] += Math.abs(upFiltered);
+            sums[FILTER_AVERAGE] += Math.abs(average);
+            sums[FILTER_PAETH] += Math.abs(paeth);
+        }
+
+        int best = FILTER_NONE;
+        for (int filter = FILTER_SUB; filter <= FILTER_PAETH; filter++) {
+            if (sums[filter] < sums[best]) {
+                best = filter;
+            }
+        }
+
+        return filtered[best];
+    }
+
+    private static int paethPredictor(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int leftDistance = Math.abs(estimate - left);
+        int upDistance = Math.abs(estimate - up);
+        int upLeftDistance = Math.abs(estimate - upLeft);
+
+        if (leftDistance <= upDistance && leftDistance <= upLeftDistance) {
+            return left;
+        } else if (upDistance <= upLeftDistance) {
+            return up;
+        } else {
+            return upLeft;
+        }
+    }
+
+    /**
+     * Finish the image data and write the end of the PNG. Every row must have
+     * been written. This doesn't close the output stream.
+     *
+     * @throws IOException if there was an error writing
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (rowsWritten != height) {
+                throw new IllegalStateException("Only " + rowsWritten + " of the " + height + " rows were written");
+            }
+
+            if (!started) {
+                start();
+            }
+            submitBlock(true);
+
+            writeInt(imageData, (int) adler);
+            imageData.close(); // Writes the last IDAT chunk
+            writeChunk("IEND", new byte[0]);
+            output.flush();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the deflate compression level
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Set how hard to compress the image, before any rows are written.
+     *
+     * @param compressionLevel from 0 (no compression) to 9 (best
+     * compression), or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        checkNotStarted();
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return the deflate compression strategy
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    /**
+     * Set the deflate compression strategy, before any rows are written.
+     * {@link Deflater#FILTERED} favors the short matches of filtered rows,
+     * and {@link Deflater#HUFFMAN_ONLY} skips looking for matches, which is
+     * much faster but compresses less.
+     *
+     * @param compressionStrategy {@link Deflater#DEFAULT_STRATEGY},
+     * {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     */
+    public void setCompressionStrategy(int compressionStrategy) {
+        checkNotStarted();
+        if (compressionStrategy != Deflater.DEFAULT_STRATEGY && compressionStrategy != Deflater.FILTERED
+                && compressionStrategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid compression strategy: " + compressionStrategy);
+        }
+
+        this.compressionStrategy = compressionStrategy;
+    }
+
+    /**
+     * @return the number of threads blocks of rows are compressed on
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Set the number of threads to compress blocks of rows on, before any
+     * rows are written. With 1, rows are compressed on the calling thread.
+     *
+     * @param threadCount the number of threads
+     */
+    public void setThreadCount(int threadCount) {
+        checkNotStarted();
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("The compression can't change once rows have been written");
+        }
+    }
+
+    private void writeChunk(String type, byte[] data) throws IOException {
+        writeChunk(type, data, data.length);
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        var typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        var crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        writeInt(output, length);
+        output.write(typeBytes);
+        output.write(data, 0, length);
+        writeInt(output, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Collects compressed image data and writes it out as chunks.
+     */
+    private final class ChunkOutputStream extends OutputStream {
+
+        private final String type;
+        private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        private int size = 0;
+
+        ChunkOutputStream(String type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == buffer.length) {
+                flush();
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == buffer.length) {
+                    flush();
+                }
+
+                int count = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, count);
+                size += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk(type, buffer, size);
+                size = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+    }
+
+}
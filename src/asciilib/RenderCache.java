@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Recently rendered images and text, so rendering the same source with the
+ * same palette and sampling parameters again is instant. Renders are looked
+ * up by the source they came from, the frame, and everything in the palette
+ * and sampling parameters that changes how they look. The least recently
+ * used renders are dropped once the cache holds more than its byte budget.
+ *
+ * Rendered images are shared by everything that gets them from the cache, so
+ * they must not be drawn on.
+ *
+ * @author Ian Martinez
+ */
+public final class RenderCache {
+
+    public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+
+    private final long maxBytes;
+    private long size = 0; // Bytes held by the cached renders
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * What a render was rendered from. The source is compared by identity,
+     * and the palette and sampling parameters are copied, since they can be
+     * changed after the render.
+     */
+    private static final class Key {
+
+        final boolean text;
+        final Object source;
+        final int frame;
+        final boolean usingPhrase, overridingImageColors;
+        final int backgroundColor, fontColor;
+        final Font font;
+        final String weights;
+        final int sampleWidth, sampleHeight;
+        final boolean indexedOutput;
+        final int phrasePos;
+        final int hash;
+
+        Key(boolean text, Object source, int frame, AsciiRenderer renderer, BufferedImage sourceImage) {
+            var palette = renderer.getPalette();
+            var params = renderer.getSamplingParams();
+
+            this.text = text;
+            this.source = source;
+            this.frame = frame;
+            usingPhrase = palette.isUsingPhrase();
+            overridingImageColors = palette.isOverridingImageColors();
+            backgroundColor = palette.getBackgroundColor().getRGB();
+            fontColor = palette.getFontColor().getRGB();
+            font = palette.getFont();
+            weights = palette.getWeightsString();
+            sampleWidth = (params != null) ? params.getSampleWidth() : sourceImage.getWidth();
+            sampleHeight = (params != null) ? params.getSampleHeight() : sourceImage.getHeight();
+            indexedOutput = !text && renderer.isIndexedOutput();
+            phrasePos = usingPhrase ? renderer.getPhrasePos() : 0;
+
+            hash = Objects.hash(text, System.identityHashCode(source), frame, usingPhrase, overridingImageColors,
+                    backgroundColor, fontColor, font, weights, sampleWidth, sampleHeight, indexedOutput, phrasePos);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other
+                    && hash == other.hash
+                    && text == other.text
+                    && source == other.source
+                    && frame == other.frame
+                    && usingPhrase == other.usingPhrase
+                    && overridingImageColors == other.overridingImageColors
+                    && backgroundColor == other.backgroundColor
+                    && fontColor == other.fontColor
+                    && font.equals(other.font)
+                    && weights.equals(other.weights)
+                    && sampleWidth == other.sampleWidth
+                    && sampleHeight == other.sampleHeight
+                    && indexedOutput == other.indexedOutput
+                    && phrasePos == other.phrasePos;
+        }
+
+    }
+
+    /**
+     * A cached render.
+     */
+    private static final class Entry {
+
+        final Object render; // A BufferedImage or a String
+        final int phrasePosAfter; // Where the render left the phrase
+        final long size;
+
+        Entry(Object render, int phrasePosAfter, long size) {
+            this.render = render;
+            this.phrasePosAfter = phrasePosAfter;
+            this.size = size;
+        }
+
+    }
+
+    /**
+     * Create a new RenderCache that holds up to
+     * {@link #DEFAULT_MAX_BYTES} of renders.
+     */
+    public RenderCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Create a new RenderCache.
+     *
+     * @param maxBytes the most bytes of renders to hold
+     */
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Render an ASCII art image, or get it from the cache if it has been
+     * rendered before.
+     *
+     * @param renderer the renderer to render with
+     * @param sourceImage the image to derive the pixel data from
+     * @param source what the image came from, such as the image itself or
+     * the GIF it is a frame of
+     * @param frame the frame of the source the image is
+     *
+     * @return the rendered ASCII art image, which must not be drawn on
+     */
+    public BufferedImage renderImage(AsciiRenderer renderer, BufferedImage sourceImage, Object source, int frame) {
+        var key = new Key(false, source, frame, renderer, sourceImage);
+        var cached = get(key, renderer);
+        if (cached != null) {
+            return (BufferedImage) cached;
+        }
+
+        var image = renderer.renderImage(sourceImage);
+        put(key, new Entry(image, renderer.getPhrasePos(), getByteSize(image)));
+
+        return image;
+    }
+
+    /**
+     * Render ASCII art text, or get it from the cache if it has been rendered
+     * before.
+     *
+     * @param renderer the renderer to render with
+     * @param sourceImage the image to derive the pixel data from
+     * @param source what the image came from, such as the image itself or
+     * the GIF it is a frame of
+     * @param frame the frame of the source the image is
+     *
+     * @return the ASCII art text
+     */
+    public String renderText(AsciiRenderer renderer, BufferedImage sourceImage, Object source, int frame) {
+        var key = new Key(true, source, frame, renderer, sourceImage);
+        var cached = get(key, renderer);
+        if (cached != null) {
+            return (String) cached;
+        }
+
+        var text = renderer.renderText(sourceImage);
+        put(key, new Entry(text, renderer.getPhrasePos(), 2L * text.length()));
+
+        return text;
+    }
+
+    /**
+     * Check if an image has been rendered before, without rendering it.
+     *
+     * @param renderer the renderer it would be rendered with
+     * @param sourceImage the image to derive the pixel data from
+     * @param source what the image came from
+     * @param frame the frame of the source the image is
+     *
+     * @return if the rendered image is in the cache
+     */
+    public synchronized boolean containsImage(AsciiRenderer renderer, BufferedImage sourceImage, Object source, int frame) {
+        return entries.containsKey(new Key(false, source, frame, renderer, sourceImage));
+    }
+
+    /**
+     * Save ASCII art text to a file. If the text is in the cache, it is saved
+     * from there, otherwise it is rendered as it is saved, the same as
+     * {@link AsciiRenderer#saveText(String, BufferedImage)}, and isn't
+     * cached, since it could be too large to hold.
+     *
+     * @param renderer the renderer to render with
+     * @param filePath the file to save to
+     * @param sourceImage the image to derive the pixel data from
+     * @param source what the image came from
+     * @param frame the frame of the source the image is
+     *
+     * @throws IOException if there was an error writing the file
+     */
+    public void saveText(AsciiRenderer renderer, String filePath, BufferedImage sourceImage, Object source, int frame) throws IOException {
+        var cached = get(new Key(true, source, frame, renderer, sourceImage), renderer);
+
+        if (cached != null) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
+                writer.write((String) cached);
+            }
+        } else {
+            renderer.saveText(filePath, sourceImage);
+        }
+    }
+
+    /**
+     * Save an ASCII art image to a file. If the image is in the cache, it is
+     * saved from there, otherwise it is rendered as it is saved, the same as
+     * {@link AsciiRenderer#saveImage(String, BufferedImage)}, and isn't
+     * cached, since it could be too large to hold.
+     *
+     * @param renderer the renderer to render with
+     * @param filePath the file to save to
+     * @param sourceImage the image to derive the pixel data from
+     * @param source what the image came from
+     * @param frame the frame of the source the image is
+     *
+     * @throws IOException if there was an error writing the file
+     */
+    public void saveImage(AsciiRenderer renderer, String filePath, BufferedImage sourceImage, Object source, int frame) throws IOException {
+        var cached = get(new Key(false, source, frame, renderer, sourceImage), renderer);
+
+        if (cached != null) {
+            renderer.saveRenderedImage(filePath, (BufferedImage) cached);
+        } else {
+            renderer.saveImage(filePath, sourceImage);
+        }
+    }
+
+    /**
+     * Drop every cached render.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the bytes held by the cached renders
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the most bytes of renders the cache holds
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get a cached render, and move the renderer's phrase along as if it had
+     * rendered it.
+     *
+     * @param key the render's key
+     * @param renderer the renderer
+     *
+     * @return the render, or null if it isn't cached
+     */
+    private Object get(Key key, AsciiRenderer renderer) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        renderer.setPhrasePos(entry.phrasePosAfter);
+
+        return entry.render;
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.size > maxBytes) {
+            return; // Would push everything else out
+        }
+
+        var replaced = entries.put(key, entry);
+        if (replaced != null) {
+            size -= replaced.size;
+        }
+        size += entry.size;
+
+        // Drop the least recently used renders until they fit
+        var iterator = entries.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            size -= eldest.getValue().size;
+            iterator.remove();
+        }
+    }
+
+    private static long getByteSize(BufferedImage image) {
+        var buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+}
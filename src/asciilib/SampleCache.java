@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Recently sampled images, so rendering the same image again with a
+ * different font color, background or set of weights skips sampling it.
+ * Samples are looked up by the image they came from (each frame of a GIF is
+ * its own image), the size of the grid it was sampled into and the size of
+ * its cells. The least recently used samples are dropped once the cache
+ * holds more than its byte budget.
+ *
+ * The cache keeps the images it has samples of alive, so it should be
+ * cleared, or the image invalidated, when an image is no longer used.
+ *
+ * @author Ian Martinez
+ */
+public final class SampleCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+    private long size = 0; // Bytes held by the cached samples
+    private final LinkedHashMap<Key, SampleGrid> samples = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * What a sample was sampled from. The image is compared by identity.
+     * Every sample is an area average, so the cells' size is the only other
+     * thing that changes how it was sampled. Fonts with different ratios can
+     * give the same number of rows from different cell heights.
+     */
+    private static final class Key {
+
+        final BufferedImage source;
+        final int columns, rows, sampleHeight;
+        final double cellWidth, cellHeight;
+        final boolean withColors;
+
+        Key(BufferedImage source, int columns, int rows, double cellWidth, double cellHeight, int sampleHeight, boolean withColors) {
+            this.source = source;
+            this.columns = columns;
+            this.rows = rows;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            this.sampleHeight = sampleHeight;
+            this.withColors = withColors;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(source), columns, rows, cellWidth, cellHeight, sampleHeight, withColors);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other
+                    && source == other.source
+                    && columns == other.columns
+                    && rows == other.rows
+                    && Double.compare(cellWidth, other.cellWidth) == 0
+                    && Double.compare(cellHeight, other.cellHeight) == 0
+                    && sampleHeight == other.sampleHeight
+                    && withColors == other.withColors;
+        }
+
+    }
+
+    /**
+     * Create a new SampleCache that holds up to {@link #DEFAULT_MAX_BYTES}
+     * of samples.
+     */
+    public SampleCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Create a new SampleCache.
+     *
+     * @param maxBytes the most bytes of samples to hold
+     */
+    public SampleCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sample an image into glyph cells, or get the sample from the cache if
+     * the image has been sampled into the same cells before.
+     *
+     * @param source the image to sample
+     * @param columns the number of cells in a row
+     * @param rows the number of rows of cells
+     * @param cellWidth the width of each cell in the image's pixels
+     * @param cellHeight the height of each cell in the image's pixels
+     * @param sampleHeight the number of sample rows the cells make up
+     * @param withColors if the color of each cell should be sampled too
+     * @param parallel if rows of cells should be sampled in parallel
+     *
+     * @return the sampled cells, which are shared with later renders
+     */
+    SampleGrid getSample(BufferedImage source, int columns, int rows, double cellWidth, double cellHeight,
+            int sampleHeight, boolean withColors, boolean parallel) {
+        var key = new Key(source, columns, rows, cellWidth, cellHeight, sampleHeight, withColors);
+
+        synchronized (this) {
+            var cached = samples.get(key);
+
+            // Cells sampled with colors work just as well without them
+            if (cached == null && !withColors) {
+                cached = samples.get(new Key(source, columns, rows, cellWidth, cellHeight, sampleHeight, true));
+            }
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        var grid = SampleGrid.create(source, columns, rows, cellWidth, cellHeight, sampleHeight, withColors, parallel);
+        put(key, grid);
+
+        return grid;
+    }
+
+    /**
+     * Drop every sample of an image, such as when it has been replaced.
+     *
+     * @param source the image
+     */
+    public synchronized void invalidate(BufferedImage source) {
+        var iterator = samples.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+
+            if (entry.getKey().source == source) {
+                size -= entry.getValue().getByteSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop every cached sample.
+     */
+    public synchronized void clear() {
+        samples.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the bytes held by the cached samples
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the most bytes of samples the cache holds
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private synchronized void put(Key key, SampleGrid grid) {
+        long gridSize = grid.getByteSize();
+        if (gridSize > maxBytes) {
+            return; // Would push everything else out
+        }
+
+        var replaced = samples.put(key, grid);
+        if (replaced != null) {
+            size -= replaced.getByteSize();
+        }
+        size += gridSize;
+
+        // Drop the least recently used samples until they fit
+        var iterator = samples.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, SampleGrid> eldest = iterator.next();
+            size -= eldest.getValue().getByteSize();
+            iterator.remove();
+        }
+    }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciilib;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The luminance, and optionally the color, of every glyph cell of an image.
+ * Each cell is the average of every pixel of the source image it covers,
+ * weighted by how much of the pixel is in the cell, so no pixels are skipped
+ * no matter how large the cells are.
+ *
+ * @author Ian Martinez
+ */
+public final class SampleGrid {
+
+    // Below this many rows, it's faster to sample on one thread
+    private static final int MIN_PARALLEL_ROWS = 32;
+
+    private final int columns;
+    private final int rows;
+    private final int sampleHeight;
+    private final float[] luminances; // Row by row, from 0 to 1
+    private final int[] colors; // Row by row as RGB, or null if colors weren't sampled
+    private final int hash;
+
+    private SampleGrid(int columns, int rows, int sampleHeight, float[] luminances, int[] colors) {
+        this.columns = columns;
+        this.rows = rows;
+        this.sampleHeight = sampleHeight;
+        this.luminances = luminances;
+        this.colors = colors;
+
+        hash = 31 * (31 * (31 * columns + rows) + Arrays.hashCode(luminances)) + Arrays.hashCode(colors);
+    }
+
+    /**
+     * Sample an image into a grid of cells. The cells start at the top left
+     * corner of the image, and cells on the right and bottom edges are
+     * cropped to the image.
+     *
+     * @param source the image to sample
+     * @param columns the number of cells in a row
+     * @param rows the number of rows of cells
+     * @param cellWidth the width of a cell, in source pixels
+     * @param cellHeight the height of a cell, in source pixels
+     * @param sampleHeight the number of sample rows the cells make up, for
+     * reporting progress
+     * @param withColors if the color of each cell should be sampled too
+     * @param parallel if rows should be sampled in parallel
+     *
+     * @return the sampled cells
+     */
+    public static SampleGrid create(BufferedImage source, int columns, int rows, double cellWidth, double cellHeight,
+            int sampleHeight, boolean withColors, boolean parallel) {
+        var luminances = new float[columns * rows];
+        var colors = withColors ? new int[columns * rows] : null;
+
+        // Where each column starts and ends in a row of source pixels, and
+        // how much of the pixels on its edges it covers
+        int sourceWidth = source.getWidth();
+        var firstX = new int[columns];
+        var lastX = new int[columns];
+        var firstWeights = new float[columns];
+        var lastWeights = new float[columns];
+
+        for (int column = 0; column < columns; column++) {
+            double start = Math.min(column * cellWidth, sourceWidth);
+            double end = Math.min((column + 1) * cellWidth, sourceWidth);
+            firstX[column] = Math.min((int) start, sourceWidth - 1);
+            lastX[column] = Math.max(firstX[column], (int) Math.ceil(end) - 1);
+
+            if (firstX[column] == lastX[column]) {
+                firstWeights[column] = (float) Math.max(end - start, 0);
+                lastWeights[column] = 0;
+            } else {
+                firstWeights[column] = (float) (firstX[column] + 1 - start);
+                lastWeights[column] = (float) (end - lastX[column]);
+            }
+        }
+
+        int bandCount = 1;
+        if (parallel && rows >= MIN_PARALLEL_ROWS) {
+            bandCount = Math.min(rows, ForkJoinPool.getCommonPoolParallelism() * 4);
+        }
+
+        final int bands = bandCount;
+        var layout = new RowLayout(source);
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int firstRow = (int) ((long) rows * band / bands);
+            int endRow = (int) ((long) rows * (band + 1) / bands);
+            var pixels = new int[sourceWidth];
+            var sums = new float[columns * 3]; // Red, green and blue of each cell in the row
+
+            for (int row = firstRow; row < endRow; row++) {
+                double top = Math.min(row * cellHeight, source.getHeight());
+                double bottom = Math.min((row + 1) * cellHeight, source.getHeight());
+                int firstY = Math.min((int) top, source.getHeight() - 1);
+                int lastY = Math.max(firstY, (int) Math.ceil(bottom) - 1);
+                Arrays.fill(sums, 0);
+
+                for (int y = firstY; y <= lastY; y++) {
+                    float rowWeight = (float) (Math.min(bottom, y + 1) - Math.max(top, y));
+
+                    if (rowWeight > 0) {
+                        layout.addRow(y, pixels, rowWeight, firstX, lastX, firstWeights, lastWeights, sums);
+                    }
+                }
+
+                for (int column = 0; column < columns; column++) {
+                    int cell = row * columns + column;
+                    float weight = cellWidth(firstWeights, lastWeights, firstX, lastX, column) * (float) (bottom - top);
+                    float red, green, blue;
+
+                    if (weight > 0) {
+                        red = sums[column * 3] / weight;
+                        green = sums[column * 3 + 1] / weight;
+                        blue = sums[column * 3 + 2] / weight;
+                    } else { // A cell that covers nothing takes the pixel it's on
+                        int pixel = source.getRGB(firstX[column], firstY);
+                        red = (pixel >>> 16) & 0xFF;
+                        green = (pixel >>> 8) & 0xFF;
+                        blue = pixel & 0xFF;
+                    }
+
+                    luminances[cell] = (red * 0.2126f + green * 0.7152f + blue * 0.0722f) / 255;
+
+                    if (colors != null) {
+                        colors[cell] = (channel(red) << 16) | (channel(green) << 8) | channel(blue);
+                    }
+                }
+            }
+        });
+
+        return new SampleGrid(columns, rows, sampleHeight, luminances, colors);
+    }
+
+    /**
+     * Add a row of source pixels to the sums of the cells in its row.
+     *
+     * @param pixels the pixels, as RGB
+     * @param offset the index of the first pixel of the row
+     * @param rowWeight how much of the row is in the cells
+     * @param firstX the first pixel of each column
+     * @param lastX the last pixel of each column
+     * @param firstWeights how much of the first pixel is in each column
+     * @param lastWeights how much of the last pixel is in each column
+     * @param sums the red, green and blue sums of each cell
+     */
+    private static void addRow(int[] pixels, int offset, float rowWeight, int[] firstX, int[] lastX,
+            float[] firstWeights, float[] lastWeights, float[] sums) {
+        for (int column = 0; column < firstX.length; column++) {
+            int first = pixels[offset + firstX[column]];
+            float red = ((first >>> 16) & 0xFF) * firstWeights[column];
+            float green = ((first >>> 8) & 0xFF) * firstWeights[column];
+            float blue = (first & 0xFF) * firstWeights[column];
+
+            if (lastX[column] != firstX[column]) {
+                int middleRed = 0, middleGreen = 0, middleBlue = 0;
+                int end = offset + lastX[column];
+
+                for (int i = offset + firstX[column] + 1; i < end; i++) {
+                    int pixel = pixels[i];
+                    middleRed += (pixel >>> 16) & 0xFF;
+                    middleGreen += (pixel >>> 8) & 0xFF;
+                    middleBlue += pixel & 0xFF;
+                }
+
+                int last = pixels[end];
+                red += middleRed + ((last >>> 16) & 0xFF) * lastWeights[column];
+                green += middleGreen + ((last >>> 8) & 0xFF) * lastWeights[column];
+                blue += middleBlue + (last & 0xFF) * lastWeights[column];
+            }
+
+            sums[column * 3] += red * rowWeight;
+            sums[column * 3 + 1] += green * rowWeight;
+            sums[column * 3 + 2] += blue * rowWeight;
+        }
+    }
+
+    /**
+     * Add a row of source pixels stored a byte per channel to the sums of the
+     * cells in its row.
+     *
+     * @param data the pixels' bytes
+     * @param offset the index of the first byte of the row
+     * @param pixelStride the number of bytes in a pixel
+     * @param bandOffsets where the red, green and blue bytes are in a pixel
+     * @param rowWeight how much of the row is in the cells
+     * @param firstX the first pixel of each column
+     * @param lastX the last pixel of each column
+     * @param firstWeights how much of the first pixel is in each column
+     * @param lastWeights how much of the last pixel is in each column
+     * @param sums the red, green and blue sums of each cell
+     */
+    private static void addByteRow(byte[] data, int offset, int pixelStride, int[] bandOffsets, float rowWeight,
+            int[] firstX, int[] lastX, float[] firstWeights, float[] lastWeights, float[] sums) {
+        int redOffset = offset + bandOffsets[0];
+        int greenOffset = offset + bandOffsets[1];
+        int blueOffset = offset + bandOffsets[2];
+
+        for (int column = 0; column < firstX.length; column++) {
+            int first = firstX[column] * pixelStride;
+            float red = (data[redOffset + first] & 0xFF) * firstWeights[column];
+            float green = (data[greenOffset + first] & 0xFF) * firstWeights[column];
+            float blue = (data[blueOffset + first] & 0xFF) * firstWeights[column];
+
+            if (lastX[column] != firstX[column]) {
+                int middleRed = 0, middleGreen = 0, middleBlue = 0;
+                int last = lastX[column] * pixelStride;
+
+                for (int i = first + pixelStride; i < last; i += pixelStride) {
+                    middleRed += data[redOffset + i] & 0xFF;
+                    middleGreen += data[greenOffset + i] & 0xFF;
+                    middleBlue += data[blueOffset + i] & 0xFF;
+                }
+
+                red += middleRed + (data[redOffset + last] & 0xFF) * lastWeights[column];
+                green += middleGreen + (data[greenOffset + last] & 0xFF) * lastWeights[column];
+                blue += middleBlue + (data[blueOffset + last] & 0xFF) * lastWeights[column];
+            }
+
+            sums[column * 3] += red * rowWeight;
+            sums[column * 3 + 1] += green * rowWeight;
+            sums[column * 3 + 2] += blue * rowWeight;
+        }
+    }
+
+    private static float cellWidth(float[] firstWeights, float[] lastWeights, int[] firstX, int[] lastX, int column) {
+        int middle = Math.max(0, lastX[column] - firstX[column] - 1);
+        return firstWeights[column] + middle + lastWeights[column];
+    }
+
+    private static int channel(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * How to read the rows of an image. The common image types are read
+     * straight from their data buffers, and everything else goes through
+     * getRGB.
+     */
+    private static final class RowLayout {
+
+        final BufferedImage image;
+        int[] intData; // Packed RGB pixels, if the image has them
+        byte[] byteData; // A byte per channel, if the image has them
+        boolean premultiplied; // If the packed pixels have to be unpremultiplied first
+        int offset, scanlineStride, pixelStride;
+        int[] bandOffsets;
+
+        RowLayout(BufferedImage image) {
+            this.image = image;
+            var raster = image.getRaster();
+
+            if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+                return;
+            }
+
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE -> {
+                    if (raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                            && raster.getDataBuffer() instanceof DataBufferInt dataBuffer) {
+                        intData = dataBuffer.getData();
+                        offset = dataBuffer.getOffset();
+                        scanlineStride = sampleModel.getScanlineStride();
+                        premultiplied = image.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+                    }
+                }
+                case BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR -> {
+                    if (raster.getSampleModel() instanceof ComponentSampleModel sampleModel
+                            && raster.getDataBuffer() instanceof DataBufferByte dataBuffer) {
+                        byteData = dataBuffer.getData();
+                        offset = dataBuffer.getOffset();
+                        scanlineStride = sampleModel.getScanlineStride();
+                        pixelStride = sampleModel.getPixelStride();
+                        bandOffsets = sampleModel.getBandOffsets();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Add a row of the image to the sums of the cells in its row.
+         *
+         * @param y the y position of the row
+         * @param pixels a buffer for a row of pixels
+         * @param rowWeight how much of the row is in the cells
+         * @param firstX the first pixel of each column
+         * @param lastX the last pixel of each column
+         * @param firstWeights how much of the first pixel is in each column
+         * @param lastWeights how much of the last pixel is in each column
+         * @param sums the red, green and blue sums of each cell
+         */
+        void addRow(int y, int[] pixels, float rowWeight, int[] firstX, int[] lastX,
+                float[] firstWeights, float[] lastWeights, float[] sums) {
+            int rowOffset = offset + y * scanlineStride;
+
+            if (byteData != null) {
+                addByteRow(byteData, rowOffset, pixelStride, bandOffsets, rowWeight, firstX, lastX, firstWeights, lastWeights, sums);
+            } else if (intData != null && !premultiplied) {
+                SampleGrid.addRow(intData, rowOffset, rowWeight, firstX, lastX, firstWeights, lastWeights, sums);
+            } else {
+                if (intData != null) {
+                    for (int x = 0; x < pixels.length; x++) {
+                        pixels[x] = unpremultiply(intData[rowOffset + x]);
+                    }
+                } else {
+                    image.getRGB(0, y, pixels.length, 1, pixels, 0, pixels.length);
+                }
+
+                SampleGrid.addRow(pixels, 0, rowWeight, firstX, lastX, firstWeights, lastWeights, sums);
+            }
+        }
+
+        private static int unpremultiply(int argb) {
+            int alpha = argb >>> 24;
+
+            if (alpha == 255 || alpha == 0) {
+                return argb;
+            }
+
+            int red = Math.min(255, (((argb >>> 16) & 0xFF) * 255 + alpha / 2) / alpha);
+            int green = Math.min(255, (((argb >>> 8) & 0xFF) * 255 + alpha / 2) / alpha);
+            int blue = Math.min(255, ((argb & 0xFF) * 255 + alpha / 2) / alpha);
+
+            return (red << 16) | (green << 8) | blue;
+        }
+
+    }
+
+    /**
+     * @return the number of cells in a row
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the number of rows of cells
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of sample rows the cells make up
+     */
+    public int getSampleHeight() {
+        return sampleHeight;
+    }
+
+    /**
+     * Get the luminance of a cell.
+     *
+     * @param column the column of the cell
+     * @param row the row of the cell
+     *
+     * @return the luminance, from 0 to 1
+     */
+    public float getLuminance(int column, int row) {
+        return luminances[row * columns + column];
+    }
+
+    /**
+     * @return if the color of each cell was sampled
+     */
+    public boolean hasColors() {
+        return colors != null;
+    }
+
+    /**
+     * Get the color of a cell.
+     *
+     * @param column the column of the cell
+     * @param row the row of the cell
+     *
+     * @return the color, as an RGB int
+     */
+    public int getColor(int column, int row) {
+        return colors[row * columns + column];
+    }
+
+    /**
+     * @return roughly how many bytes the grid takes up
+     */
+    long getByteSize() {
+        return 4L * luminances.length + ((colors != null) ? 4L * colors.length : 0);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SampleGrid other
+                && hash == other.hash
+                && columns == other.columns
+                && rows == other.rows
+                && Arrays.equals(luminances, other.luminances)
+                && Arrays.equals(colors, other.colors);
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciistudio;
+
+import asciilib.Palette;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+/**
+ * Command line main class, to convert images to ASCII art without a display.
+ *
+ * <pre>
+ * java -cp AsciiStudio.jar asciistudio.AsciiStudioCli [options] files or directories...
+ * </pre>
+ *
+ * @author Ian Martinez
+ */
+public class AsciiStudioCli {
+
+    private static final String USAGE = """
+            Usage: asciistudio.AsciiStudioCli [options] <files or directories>...
+
+            Converts images to ASCII art. Directories convert the images in them,
+            and in every directory under them, into the same directories under
+            the output directory.
+
+            Options:
+              -p, --palette <file>   Palette file (*.ascp) to render with
+              -r, --ratio <ratio>    Sampling ratio (pixels per character)
+              -t, --type <type>      text, image or gif (default: image)
+                                     gif saves GIFs as animated GIFs, other
+                                     images as PNGs
+              -o, --output <dir>     Directory to save to (default: next to
+                                     each image)
+              --png-level <level>    PNG compression level, from 0 (fastest)
+                                     to 9 (smallest)
+              --png-strategy <name>  PNG compression strategy: default,
+                                     filtered or huffman
+              -w, --workers <count>  Files to render at once (default: the
+                                     number of cores)
+              --report <file>        Save a CSV report of every file
+              -h, --help             Show this message
+            """;
+
+    private AsciiStudioCli() { } // No constructor
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        // There's no window, so don't need a display
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Convert the files the command line arguments ask for.
+     *
+     * @param args the command line arguments
+     *
+     * @return the exit code: 0 if every file was converted, 1 if any
+     * failed
+     *
+     * @throws IllegalArgumentException if the arguments aren't valid
+     */
+    public static int run(String[] args) {
+        var palette = new Palette();
+        var renderType = RenderType.STILL_IMAGE;
+        double samplingRatio = 0;
+        File outputDirectory = null;
+        File reportFile = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int pngCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+        int pngCompressionStrategy = Deflater.DEFAULT_STRATEGY;
+        var inputs = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            var arg = args[i];
+
+            switch (arg) {
+                case "-h", "--help" -> {
+                    System.out.print(USAGE);
+                    return 0;
+                }
+                case "-p", "--palette" -> {
+                    var palettePath = getValue(args, ++i, arg);
+                    palette = Palette.importFile(palettePath);
+                    if (palette == null) {
+                        throw new IllegalArgumentException("Couldn't read palette " + palettePath);
+                    }
+                }
+                case "-r", "--ratio" ->
+                    samplingRatio = parsePositive(getValue(args, ++i, arg), arg);
+                case "-t", "--type" ->
+                    renderType = parseRenderType(getValue(args, ++i, arg));
+                case "-o", "--output" -> {
+                    outputDirectory = new File(getValue(args, ++i, arg));
+                    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+                        throw new IllegalArgumentException("Couldn't create " + outputDirectory);
+                    }
+                }
+                case "-w", "--workers" ->
+                    workers = (int) parsePositive(getValue(args, ++i, arg), arg);
+                case "--png-level" ->
+                    pngCompressionLevel = parseInt(getValue(args, ++i, arg), arg);
+                case "--png-strategy" ->
+                    pngCompressionStrategy = FileConverter.parsePngCompressionStrategy(getValue(args, ++i, arg));
+                case "--report" ->
+                    reportFile = new File(getValue(args, ++i, arg));
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+
+                    inputs.add(new File(arg));
+                }
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No files to convert");
+        }
+
+        var converter = new FileConverter(palette, renderType);
+        converter.setSamplingRatio(samplingRatio);
+        converter.setOutputDirectory(outputDirectory);
+        converter.setParallel(workers == 1); // Files are converted in parallel instead
+        converter.setPngCompressionLevel(pngCompressionLevel);
+        converter.setPngCompressionStrategy(pngCompressionStrategy);
+
+        try {
+            var results = new BatchConverter(converter, workers).convert(inputs, AsciiStudioCli::printResult);
+            long converted = results.stream().filter(BatchConverter.Result::isConverted).count();
+            System.out.println("Converted " + converted + " of " + results.size() + " files");
+
+            if (reportFile != null) {
+                try (var writer = new BufferedWriter(new FileWriter(reportFile))) {
+                    BatchConverter.writeReport(results, writer);
+                }
+            }
+
+            return (converted == results.size()) ? 0 : 1;
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return 1;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private static void printResult(BatchConverter.Result result) {
+        if (result.isConverted()) {
+            System.out.println(result.getInput() + " -> " + result.getOutput());
+        } else {
+            System.err.println(result.getInput() + ": " + result.getError());
+        }
+    }
+
+    private static String getValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+
+        return args[i];
+    }
+
+    private static double parsePositive(String value, String option) {
+        try {
+            var number = Double.parseDouble(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+
+        throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+    }
+
+    private static int parseInt(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+    }
+
+    private static RenderType parseRenderType(String value) {
+        return switch (value.toLowerCase()) {
+            case "text" ->
+                RenderType.TEXT;
+            case "image" ->
+                RenderType.STILL_IMAGE;
+            case "gif" ->
+                RenderType.GIF;
+            default ->
+                throw new IllegalArgumentException("Invalid type: " + value);
+        };
+    }
+
+}
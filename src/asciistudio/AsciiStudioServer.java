@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciistudio;
+
+import asciilib.FileUtil;
+import asciilib.Palette;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.awt.Font;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Server main class, to render images to ASCII art over HTTP without
+ * starting a new JVM for every image.
+ *
+ * <pre>
+ * java -cp AsciiStudio.jar asciistudio.AsciiStudioServer [options]
+ * </pre>
+ *
+ * POST an image (PNG, JPEG or GIF) to /render, with the palette as query
+ * parameters, and the ASCII art comes back as text, a PNG or a GIF:
+ *
+ * <pre>
+ * curl --data-binary @cat.png "http://localhost:8080/render?type=image&amp;ratio=6&amp;color=00ff00&amp;override=true"
+ * </pre>
+ *
+ * Converters are kept for each palette that was used recently, so their
+ * glyphs stay rasterized between requests. A few requests render at once,
+ * while a limited number wait their turn, and the rest are turned away
+ * with 503 until the queue has room.
+ *
+ * @author Ian Martinez
+ */
+public class AsciiStudioServer {
+
+    private static final String USAGE = """
+            Usage: asciistudio.AsciiStudioServer [options]
+
+            Serves POST /render, which renders the image in the request body.
+            Query parameters:
+              type         text, image or gif (default: image)
+              ratio        Sampling ratio (pixels per character)
+              bg           Background color, as RRGGBB or RRGGBBAA
+              color        Font color, as RRGGBB or RRGGBBAA
+              font         Font name
+              style        plain, bold, italic or bolditalic
+              size         Font size
+              weights      Characters from lightest to darkest
+              override     true to use the font color instead of the image's
+              phrase       true to repeat the weights as a phrase
+              pnglevel     PNG compression level, from 0 (fastest) to 9
+                           (smallest)
+              pngstrategy  PNG compression strategy: default, filtered or
+                           huffman
+
+            Options:
+              --port <port>          Port to listen on (default: 8080)
+              --bind <address>       Address to listen on (default: 127.0.0.1)
+              -w, --workers <count>  Requests to render at once (default: the
+                                     number of cores)
+              --queue <count>        Requests that can wait to render before
+                                     new ones are turned away (default: 64)
+              -h, --help             Show this message
+            """;
+
+    private static final long MAX_REQUEST_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_CACHED_CONVERTERS = 16; // As many glyph atlases as are cached
+
+    private final Semaphore renderPermits; // Limits how many requests render at once
+    private final int maxAccepted; // The most requests that can be rendering or waiting to
+    private final AtomicInteger accepted = new AtomicInteger(); // Requests rendering or waiting to
+    private final boolean parallel; // If each request is rendered in parallel
+
+    // Recently used converters, by their query parameters
+    private final Map<String, FileConverter> converters = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileConverter> eldest) {
+            return size() > MAX_CACHED_CONVERTERS;
+        }
+    };
+
+    /**
+     * Create a new AsciiStudioServer.
+     *
+     * @param workers the most requests to render at once
+     * @param maxQueued the most requests that can wait to render
+     */
+    public AsciiStudioServer(int workers, int maxQueued) {
+        renderPermits = new Semaphore(Math.max(1, workers));
+        maxAccepted = Math.max(1, workers) + Math.max(0, maxQueued);
+        parallel = workers <= 1;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        // There's no window, so don't need a display
+        System.setProperty("java.awt.headless", "true");
+
+        int port = 8080;
+        String bindAddress = "127.0.0.1";
+        int workers = Runtime.getRuntime().availableProcessors();
+        int maxQueued = 64;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                var arg = args[i];
+
+                switch (arg) {
+                    case "-h", "--help" -> {
+                        System.out.print(USAGE);
+                        return;
+                    }
+                    case "--port" ->
+                        port = Integer.parseInt(getValue(args, ++i, arg));
+                    case "--bind" ->
+                        bindAddress = getValue(args, ++i, arg);
+                    case "-w", "--workers" ->
+                        workers = Integer.parseInt(getValue(args, ++i, arg));
+                    case "--queue" ->
+                        maxQueued = Integer.parseInt(getValue(args, ++i, arg));
+                    default ->
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException ex) { // Includes NumberFormatException
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+
+        try {
+            var server = new AsciiStudioServer(workers, maxQueued);
+            var address = server.start(new InetSocketAddress(bindAddress, port));
+            System.out.println("Listening on http://" + address.getHostString() + ":" + address.getPort() + "/render");
+        } catch (IOException ex) {
+            System.err.println("Couldn't start the server: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Start serving requests, each on its own virtual thread.
+     *
+     * @param address the address to listen on
+     *
+     * @return the address the server is listening on
+     *
+     * @throws IOException if the server couldn't be started
+     */
+    public InetSocketAddress start(InetSocketAddress address) throws IOException {
+        var server = HttpServer.create(address, 0);
+        server.createContext("/render", this::handleRender);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        return server.getAddress();
+    }
+
+    /**
+     * Render the image in a request, waiting for a turn to render if too
+     * many requests are already rendering.
+     *
+     * @param exchange the request and response
+     *
+     * @throws IOException if there was an error reading the request or
+     * sending the response
+     */
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Use POST, with the image as the body");
+                return;
+            }
+
+            // Turn the request away before doing anything for it if there
+            // are already too many waiting, so turned away requests can't
+            // push out the converters of waiting ones
+            if (accepted.incrementAndGet() > maxAccepted) {
+                accepted.decrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Too many requests are waiting to render");
+                return;
+            }
+
+            try {
+                FileConverter converter;
+                try {
+                    converter = getConverter(exchange.getRequestURI().getRawQuery());
+                } catch (IllegalArgumentException ex) {
+                    sendError(exchange, 400, ex.getMessage());
+                    return;
+                }
+
+                var directory = Files.createTempDirectory("asciistudio");
+                try {
+                    var input = receiveImage(exchange, directory);
+                    if (input == null) {
+                        return;
+                    }
+
+                    renderPermits.acquire();
+                    try {
+                        render(exchange, converter, input);
+                    } finally {
+                        renderPermits.release();
+                    }
+                } finally {
+                    try (var paths = Files.walk(directory)) {
+                        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "The server is stopping");
+            } finally {
+                accepted.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Save the image in a request's body to a file a block at a time, so
+     * only a block of it is ever in memory, checking its type from its first
+     * bytes.
+     *
+     * @param exchange the request and response
+     * @param directory the directory to save the image in
+     *
+     * @return the image file, or null if the image was turned away, in which
+     * case the error has been sent
+     *
+     * @throws IOException if there was an error reading the request or
+     * writing the file
+     */
+    private static File receiveImage(HttpExchange exchange, Path directory) throws IOException {
+        var in = exchange.getRequestBody();
+        var header = in.readNBytes(8);
+
+        var ext = getImageExt(header);
+        if (ext == null) {
+            sendError(exchange, 415, "The body isn't a PNG, JPEG or GIF");
+            return null;
+        }
+
+        var input = directory.resolve("image." + ext);
+        try (var out = Files.newOutputStream(input)) {
+            out.write(header);
+
+            long size = header.length;
+            var buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                size += count;
+                if (size > MAX_REQUEST_BYTES) {
+                    sendError(exchange, 413, "Images can be at most " + (MAX_REQUEST_BYTES >> 20) + "MB");
+                    return null;
+                }
+
+                out.write(buffer, 0, count);
+            }
+        }
+
+        return input.toFile();
+    }
+
+    /**
+     * Render an image and send it back.
+     *
+     * @param exchange the request and response
+     * @param converter the converter for the request's palette
+     * @param input the image file
+     *
+     * @throws IOException if there was an error sending the response
+     */
+    private void render(HttpExchange exchange, FileConverter converter, File input) throws IOException {
+        File output;
+        try {
+            output = converter.convert(input);
+        } catch (IOException | RuntimeException ex) {
+            sendError(exchange, 422, "Couldn't render the image (" + ex.getMessage() + ")");
+            return;
+        }
+
+        var contentType = switch (FileUtil.getExt(output.getName())) {
+            case "txt" ->
+                "text/plain; charset=UTF-8";
+            case "gif" ->
+                "image/gif";
+            default ->
+                "image/png";
+        };
+
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, output.length());
+        Files.copy(output.toPath(), exchange.getResponseBody());
+    }
+
+    /**
+     * Get the converter for a request's query parameters, reusing the one
+     * from a recent request with the same parameters.
+     *
+     * @param rawQuery the query string
+     *
+     * @return the converter
+     *
+     * @throws IllegalArgumentException if a parameter isn't valid
+     */
+    private FileConverter getConverter(String rawQuery) {
+        var params = parseQuery(rawQuery);
+        var key = params.toString();
+
+        synchronized (converters) {
+            var converter = converters.get(key);
+            if (converter != null) {
+                return converter;
+            }
+        }
+
+        var converter = createConverter(params);
+
+        synchronized (converters) {
+            converters.put(key, converter);
+        }
+
+        return converter;
+    }
+
+    private FileConverter createConverter(Map<String, String> params) {
+        var palette = new Palette();
+        var renderType = RenderType.STILL_IMAGE;
+        double samplingRatio = 0;
+        var font = palette.getFont();
+        String fontName = font.getName();
+        int fontStyle = font.getStyle();
+        float fontSize = font.getSize2D();
+        int pngCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+        int pngCompressionStrategy = Deflater.DEFAULT_STRATEGY;
+
+        for (var param : params.entrySet()) {
+            var value = param.getValue();
+
+            switch (param.getKey()) {
+                case "type" ->
+                    renderType = switch (value.toLowerCase()) {
+                        case "text" ->
+                            RenderType.TEXT;
+                        case "image" ->
+                            RenderType.STILL_IMAGE;
+                        case "gif" ->
+                            RenderType.GIF;
+                        default ->
+                            throw new IllegalArgumentException("Invalid type: " + value);
+                    };
+                case "ratio" ->
+                    samplingRatio = parsePositive(value, "ratio");
+                case "bg" ->
+                    palette.setBackgroundColor(parseColor(value, "bg"));
+                case "color" ->
+                    palette.setFontColor(parseColor(value, "color"));
+                case "font" ->
+                    fontName = value;
+                case "style" ->
+                    fontStyle = switch (value.toLowerCase()) {
+                        case "plain" ->
+                            Font.PLAIN;
+                        case "bold" ->
+                            Font.BOLD;
+                        case "italic" ->
+                            Font.ITALIC;
+                        case "bolditalic" ->
+                            Font.BOLD | Font.ITALIC;
+                        default ->
+                            throw new IllegalArgumentException("Invalid style: " + value);
+                    };
+                case "size" ->
+                    fontSize = (float) parsePositive(value, "size");
+                case "weights" -> {
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("There must be at least one weight");
+                    }
+                    palette.setWeightsString(value);
+                }
+                case "override" ->
+                    palette.setOverridingImageColors(Boolean.parseBoolean(value));
+                case "phrase" ->
+                    palette.setUsingPhrase(Boolean.parseBoolean(value));
+                case "pnglevel" -> {
+                    try {
+                        pngCompressionLevel = Integer.parseInt(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid pnglevel: " + value);
+                    }
+                }
+                case "pngstrategy" ->
+                    pngCompressionStrategy = FileConverter.parsePngCompressionStrategy(value);
+                default ->
+                    throw new IllegalArgumentException("Unknown parameter " + param.getKey());
+            }
+        }
+
+        palette.setFont(new Font(fontName, fontStyle, 1).deriveFont(fontSize));
+
+        var converter = new FileConverter(palette, renderType);
+        converter.setSamplingRatio(samplingRatio);
+        converter.setParallel(parallel);
+        converter.setPngCompressionLevel(pngCompressionLevel);
+        converter.setPngCompressionStrategy(pngCompressionStrategy);
+
+        return converter;
+    }
+
+    /**
+     * Parse a query string, sorted by name so the same parameters in any
+     * order are the same converter.
+     *
+     * @param rawQuery the query string, or null
+     *
+     * @return the parameters
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var params = new TreeMap<String, String>();
+
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (var pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                var name = URLDecoder.decode((equals == -1) ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+                var value = (equals == -1) ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+                params.put(name, value);
+            }
+        }
+
+        return params;
+    }
+
+    /**
+     * Get the extension of an image from its first bytes.
+     *
+     * @param data the image
+     *
+     * @return png, jpg or gif, or null if it isn't one of them
+     */
+    private static String getImageExt(byte[] data) {
+        if (data.length >= 8 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "png";
+        } else if (data.length >= 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        } else if (data.length >= 6 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8') {
+            return "gif";
+        }
+
+        return null;
+    }
+
+    private static Color parseColor(String value, String param) {
+        try {
+            if (value.length() == 6) {
+                return new Color(Integer.parseInt(value, 16));
+            } else if (value.length() == 8) {
+                int rgba = Integer.parseUnsignedInt(value, 16);
+                return new Color(rgba >>> 24, (rgba >>> 16) & 0xFF, (rgba >>> 8) & 0xFF, rgba & 0xFF);
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+
+        throw new IllegalArgumentException("Invalid " + param + ": " + value);
+    }
+
+    private static double parsePositive(String value, String param) {
+        try {
+            var number = Double.parseDouble(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+
+        throw new IllegalArgumentException("Invalid " + param + ": " + value);
+    }
+
+    private static String getValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+
+        return args[i];
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        var bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+}
@@ -17,17 +17,15 @@
 package asciistudio;
 
 import asciilib.AsciiRenderer;
-import asciilib.FileUtil;
+import asciilib.GifRenderer;
+import asciilib.RenderCache;
 import giflib.Gif;
 import java.awt.Desktop;
 import java.awt.image.BufferedImage;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
 
@@ -39,6 +37,11 @@ import javax.swing.SwingWorker;
  */
 public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
 
+    // A progressive preview first renders about this many columns, unless
+    // the preview isn't much bigger than that
+    private static final int COARSE_PREVIEW_COLUMNS = 80;
+    private static final int MIN_COARSE_SCALE = 4; // The coarse pass has at most a quarter of the columns
+
     private final AsciiRenderer renderer; // The renderer
     private final RenderType renderType; // The type of rendering to do
     private final MainWindow mainWindow; // The main window to update
@@ -48,10 +51,15 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
     private String outputFile; // The output file, if applicable
     private int renderMax; // The renderMax progress value
 
-    private BufferedImage renderedImage; // The rendered image, if rendering a PREVIEW or STILL_IMAGE
-    private String renderedText; // The rendered text, if rendering TEXT
-    private Gif renderedGif; // The rendered GIF, if rendering GIF
+    private BufferedImage renderedImage; // The rendered image, if rendering a PREVIEW
     private boolean openOutputWhenComplete = true; // If the output should be opened after it is saved
+    private boolean progressive = false; // If a PREVIEW shows a coarse render first
+    private volatile AsciiRenderer coarseRenderer; // The renderer for the coarse pass, if rendering one
+    private volatile BufferedImage coarseImage; // The coarse pass, until it is shown
+
+    private RenderCache renderCache; // Recent renders to reuse, if any
+    private Object cacheSource; // What the source image came from, for the render cache
+    private int cacheFrame; // The frame of the source, for the render cache
 
     public BackgroundRenderer(AsciiRenderer renderer,
             RenderType renderType,
@@ -75,7 +83,9 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
     }
 
     /**
-     * If the UI should be changed because a render is in progress.
+     * If the UI should be changed because a render is in progress. Previews
+     * only show their progress, so the settings can still be changed while
+     * they render.
      *
      * @param renderUI the value
      */
@@ -84,16 +94,44 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
             mainWindow.progressPanel.setStage("Rendering");
             mainWindow.progressPanel.setProgress(0);
 
-            mainWindow.enableImport(false);
-            mainWindow.enableEditing(false);
-        } else {
+            if (renderType != RenderType.PREVIEW) {
+                mainWindow.enableImport(false);
+                mainWindow.enableEditing(false);
+            }
+        } else if (renderType != RenderType.PREVIEW) {
             mainWindow.enableImport(true);
             mainWindow.enableEditing(true);
         }
     }
 
+    /**
+     * Cancel the render, stopping it at the next row. The main window isn't
+     * updated when a cancelled render finishes.
+     */
+    public void cancelRender() {
+        renderer.cancel();
+        cancel(false);
+
+        // Cancelled after the task, so a coarse pass either sees the task
+        // is cancelled before it starts, or has already been published here
+        var coarse = coarseRenderer;
+        if (coarse != null) {
+            coarse.cancel();
+        }
+    }
+
     @Override
     protected void process(List<RenderProgress> chunks) {
+        if (isCancelled()) {
+            return;
+        }
+
+        var coarse = coarseImage;
+        if (coarse != null) {
+            coarseImage = null;
+            mainWindow.renderedImageView.setIcon(new StretchIcon(coarse));
+        }
+
         RenderProgress progress = chunks.get(chunks.size() - 1);
         mainWindow.progressPanel.setStage(progress.getStage());
         mainWindow.progressPanel.setProgress(progress.getProgress(), 0, progress.getMax());
@@ -101,6 +139,11 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
 
     @Override
     protected Void doInBackground() throws Exception {
+        if (renderType == RenderType.PREVIEW && progressive
+                && (renderCache == null || !renderCache.containsImage(renderer, sourceImage, cacheSource, cacheFrame))) {
+            renderCoarsePreview();
+        }
+
         renderer.setProgressWatcher((int progress, int rowCount, int frame) -> {
             var relativeProgress = (frame * rowCount) + progress;
             publish(new RenderProgress("Rendering", relativeProgress, renderMax));
@@ -108,12 +151,15 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
 
         // Render image as ASCII art
         switch (renderType) {
-            case PREVIEW, STILL_IMAGE ->
-                renderedImage = renderer.renderImage(sourceImage);
-            case TEXT ->
-                renderedText = renderer.renderText(sourceImage);
-            case GIF ->
-                renderedGif = renderer.renderGif(sourceGif);
+            case PREVIEW -> {
+                renderer.setIndexedOutput(true); // Smaller to cache, and the same as an exported image
+                renderedImage = (renderCache != null)
+                        ? renderCache.renderImage(renderer, sourceImage, cacheSource, cacheFrame)
+                        : renderer.renderImage(sourceImage);
+            }
+            case STILL_IMAGE, TEXT, GIF -> {
+                // Still images, text and GIFs are streamed straight to the output file as they render
+            }
         }
 
         // Save if not a preview
@@ -129,6 +175,10 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
 
     @Override
     protected void done() {
+        if (isCancelled()) {
+            return; // Whatever replaced the render updates the main window
+        }
+
         try {
             get();
             mainWindow.progressPanel.setProgress(100);
@@ -158,6 +208,36 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
         useRenderUI(false);
     }
 
+    /**
+     * Render the preview with much bigger samples, which only takes a few
+     * milliseconds, and show it while the full preview renders.
+     */
+    private void renderCoarsePreview() {
+        var params = renderer.getSamplingParams();
+        double coarseRatio = Math.max(params.getSamplingRatio() * MIN_COARSE_SCALE,
+                params.getOriginalWidth() / COARSE_PREVIEW_COLUMNS);
+
+        if (params.getSampleWidth() < COARSE_PREVIEW_COLUMNS * MIN_COARSE_SCALE || isCancelled()) {
+            return; // The full preview is quick enough on its own
+        }
+
+        var coarse = new AsciiRenderer(renderer.getPalette(), params.withSamplingRatio(coarseRatio));
+        coarse.setSampleCache(renderer.getSampleCache());
+        coarseRenderer = coarse;
+
+        try {
+            if (isCancelled()) { // Cancelled before the renderer could be
+                return;
+            }
+
+            coarseImage = coarse.renderImage(sourceImage);
+        } finally {
+            coarseRenderer = null;
+        }
+
+        publish(new RenderProgress("Refining", 0, renderMax));
+    }
+
     /**
      * Open a process.
      *
@@ -179,19 +259,30 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
             if (null != renderType) {
                 switch (renderType) {
                     case TEXT -> {
-                        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-                            writer.write(renderedText);
+                        if (renderCache != null) {
+                            renderCache.saveText(renderer, outputFile, sourceImage, cacheSource, cacheFrame);
+                        } else {
+                            renderer.saveText(outputFile, sourceImage);
+                        }
+                    }
+                    case STILL_IMAGE -> {
+                        renderer.setIndexedOutput(true); // Smaller, and faster to save
+                        if (renderCache != null) {
+                            renderCache.saveImage(renderer, outputFile, sourceImage, cacheSource, cacheFrame);
+                        } else {
+                            renderer.saveImage(outputFile, sourceImage);
                         }
                     }
-                    case STILL_IMAGE ->
-                        ImageIO.write(renderedImage, FileUtil.getExt(outputFile, "png"), new File(outputFile));
                     case GIF -> {
-                        renderedGif.setSaveProgressWatcher((int frame, int totalFrames) -> {
-                            var relativeProgress = (int) ((frame / (double) totalFrames) * 100);
-                            publish(new RenderProgress("Saving frames", relativeProgress, 100));
+                        // Frames are saved as soon as they are rendered, so
+                        // only show the progress of the saved frames
+                        renderer.setProgressWatcher(null);
+
+                        var gifRenderer = new GifRenderer(renderer);
+                        gifRenderer.setSaveProgressWatcher((int frame, int totalFrames) -> {
+                            publish(new RenderProgress("Rendering and saving frames", frame + 1, totalFrames));
                         });
-                        renderedGif.save(outputFile);
-                        renderedGif.setSaveProgressWatcher(null);
+                        gifRenderer.save(sourceGif, outputFile);
                     }
                     default -> {
                     }
@@ -250,6 +341,38 @@ public class BackgroundRenderer extends SwingWorker<Void, RenderProgress> {
         this.renderMax = getMax();
     }
 
+    /**
+     * @return if a preview shows a coarse render first
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    /**
+     * Set if a preview should show a coarse render first, so something
+     * appears right away, then refine it to the full render.
+     *
+     * @param progressive if a preview should show a coarse render first
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /**
+     * Reuse renders from a render cache, and cache the render if it is a
+     * preview or text.
+     *
+     * @param renderCache the render cache
+     * @param source what the source image came from, such as the image itself
+     * or the GIF it is a frame of
+     * @param frame the frame of the source the source image is
+     */
+    public void setRenderCache(RenderCache renderCache, Object source, int frame) {
+        this.renderCache = renderCache;
+        this.cacheSource = source;
+        this.cacheFrame = frame;
+    }
+
     /**
      * @return the openOutputWhenComplete
      */
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciistudio;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Convert a large number of files at once. Every file gets its own virtual
+ * thread, so reading and writing files never waits on a thread pool, while
+ * rendering, which keeps a core busy, is limited to one file per core. Files
+ * that are saved as they render give up their turn to render while each
+ * block of the file is written.
+ *
+ * @author Ian Martinez
+ */
+public class BatchConverter {
+
+    private final FileConverter converter; // Converts each file
+    private final Semaphore renderPermits; // Limits how many files render at once
+    private final Semaphore filePermits; // Limits how many files are held in memory at once
+
+    /**
+     * A file to convert.
+     */
+    private static final class Job {
+
+        final File input;
+        final File outputDirectory; // Null to use the converter's
+
+        Job(File input, File outputDirectory) {
+            this.input = input;
+            this.outputDirectory = outputDirectory;
+        }
+
+    }
+
+    /**
+     * A file's turn to render, which is given up while the file is written
+     * to as it renders. Only used by the file's thread.
+     */
+    private final class RenderTurn {
+
+        private boolean held = false; // If the turn holds a render permit
+        private long writeNanos = 0; // Time spent writing while rendering
+        private long waitNanos = 0; // Time spent waiting to render again after writing
+
+        /**
+         * An action that writes to a file.
+         */
+        private interface Write {
+
+            void run() throws IOException;
+
+        }
+
+        void acquire() throws InterruptedException {
+            renderPermits.acquire();
+            held = true;
+        }
+
+        void release() {
+            if (held) {
+                held = false;
+                renderPermits.release();
+            }
+        }
+
+        /**
+         * Wrap a file's stream so the turn is given up while it is written to.
+         *
+         * @param out the file's stream
+         *
+         * @return the wrapped stream
+         */
+        OutputStream wrap(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    writeWithoutTurn(() -> out.write(b));
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    writeWithoutTurn(() -> out.write(b, off, len));
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    writeWithoutTurn(out::flush);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writeWithoutTurn(out::close);
+                }
+            };
+        }
+
+        private void writeWithoutTurn(Write write) throws IOException {
+            boolean wasHeld = held;
+            release();
+
+            long start = System.nanoTime();
+            try {
+                write.run();
+            } finally {
+                writeNanos += System.nanoTime() - start;
+            }
+
+            if (wasHeld) {
+                start = System.nanoTime();
+                try {
+                    acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to render");
+                } finally {
+                    waitNanos += System.nanoTime() - start;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The result of converting a file.
+     */
+    public static final class Result {
+
+        private final File input;
+        private final File output; // Null if the file failed
+        private final Exception error; // Null if the file was converted
+        private final long readMillis, renderMillis, writeMillis;
+
+        private Result(File input, File output, Exception error, long readMillis, long renderMillis, long writeMillis) {
+            this.input = input;
+            this.output = output;
+            this.error = error;
+            this.readMillis = readMillis;
+            this.renderMillis = renderMillis;
+            this.writeMillis = writeMillis;
+        }
+
+        /**
+         * @return the input file
+         */
+        public File getInput() {
+            return input;
+        }
+
+        /**
+         * @return the output file, or null if the file failed
+         */
+        public File getOutput() {
+            return output;
+        }
+
+        /**
+         * @return the error the file failed with, or null if it was converted
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @return if the file was converted
+         */
+        public boolean isConverted() {
+            return error == null;
+        }
+
+        /**
+         * @return how long reading the file took, in milliseconds
+         */
+        public long getReadMillis() {
+            return readMillis;
+        }
+
+        /**
+         * @return how long rendering the file took, in milliseconds, not
+         * counting waiting for a core
+         */
+        public long getRenderMillis() {
+            return renderMillis;
+        }
+
+        /**
+         * @return how long writing the file took, in milliseconds
+         */
+        public long getWriteMillis() {
+            return writeMillis;
+        }
+
+    }
+
+    /**
+     * Create a new BatchConverter that renders a file per core at once.
+     *
+     * @param converter the converter to convert each file with
+     */
+    public BatchConverter(FileConverter converter) {
+        this(converter, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new BatchConverter.
+     *
+     * @param converter the converter to convert each file with
+     * @param renderCount the most files to render at once
+     */
+    public BatchConverter(FileConverter converter, int renderCount) {
+        this.converter = converter;
+        renderPermits = new Semaphore(Math.max(1, renderCount));
+
+        // Reading is only allowed to get so far ahead of rendering, so the
+        // images waiting to render don't run out of memory
+        filePermits = new Semaphore(Math.max(1, renderCount) * 8);
+    }
+
+    /**
+     * Find the image files to convert, walking into every directory. If the
+     * converter saves to an output directory, files from under a directory
+     * are saved in the same subdirectories of it.
+     *
+     * @param inputs the files and directories
+     *
+     * @return the files to convert, with each directory's images sorted
+     *
+     * @throws IOException if a directory couldn't be walked, or an input
+     * doesn't exist
+     */
+    private List<Job> findJobs(List<File> inputs) throws IOException {
+        var jobs = new ArrayList<Job>();
+        var outputRoot = converter.getOutputDirectory();
+
+        for (var input : inputs) {
+            if (input.isDirectory()) {
+                var root = input.toPath();
+
+                try (var paths = Files.walk(root)) {
+                    paths.filter(Files::isRegularFile)
+                            .map(Path::toFile)
+                            .filter(FileConverter::isImageFile)
+                            .sorted()
+                            .forEach(file -> {
+                                File outputDirectory = null;
+                                if (outputRoot != null) {
+                                    var relativeParent = root.relativize(file.toPath()).getParent();
+                                    outputDirectory = (relativeParent != null) ? outputRoot.toPath().resolve(relativeParent).toFile() : outputRoot;
+                                }
+
+                                jobs.add(new Job(file, outputDirectory));
+                            });
+                }
+            } else if (input.isFile()) {
+                jobs.add(new Job(input, null));
+            } else {
+                throw new IOException("No such file " + input);
+            }
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Convert files and every image under directories, each on its own
+     * virtual thread.
+     *
+     * @param inputs the files and directories
+     * @param listener called with each result as the file finishes, on the
+     * file's thread, or null
+     *
+     * @return the results, in the order the files were found
+     *
+     * @throws IOException if a directory couldn't be walked, or an input
+     * doesn't exist
+     * @throws InterruptedException if interrupted while waiting for the files
+     */
+    public List<Result> convert(List<File> inputs, Consumer<Result> listener) throws IOException, InterruptedException {
+        var jobs = findJobs(inputs);
+        var futures = new ArrayList<Future<Result>>(jobs.size());
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var job : jobs) {
+                futures.add(executor.submit(() -> {
+                    var result = convertFile(job);
+                    if (listener != null) {
+                        listener.accept(result);
+                    }
+
+                    return result;
+                }));
+            }
+
+            var results = new ArrayList<Result>(jobs.size());
+            for (var future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    // Files that fail are results, so this is only if the
+                    // listener threw, an Error was thrown, or the file's
+                    // thread was interrupted
+                    var cause = ex.getCause();
+                    if (cause instanceof Error error) {
+                        throw error;
+                    } else if (cause instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    } else if (cause instanceof InterruptedException interruptedException) {
+                        throw interruptedException;
+                    }
+
+                    throw new IllegalStateException(cause);
+                }
+            }
+
+            return results;
+        }
+    }
+
+    /**
+     * Convert a file, holding a render permit only while it renders, and not
+     * while it writes.
+     *
+     * @param job the file to convert
+     *
+     * @return the result
+     *
+     * @throws InterruptedException if interrupted while waiting for a permit
+     */
+    private Result convertFile(Job job) throws InterruptedException {
+        var input = job.input;
+        long readMillis = 0, renderMillis = 0, writeMillis = 0;
+
+        filePermits.acquire();
+        try {
+            if (job.outputDirectory != null && !job.outputDirectory.isDirectory() && !job.outputDirectory.mkdirs()
+                    && !job.outputDirectory.isDirectory()) { // Another file may have made it
+                throw new IOException("Couldn't create " + job.outputDirectory);
+            }
+
+            long start = System.nanoTime();
+            var source = converter.read(input, job.outputDirectory);
+            readMillis = (System.nanoTime() - start) / 1000000;
+
+            FileConverter.Output output;
+            var turn = new RenderTurn();
+            turn.acquire();
+            try {
+                start = System.nanoTime();
+                output = converter.render(source, turn::wrap);
+                renderMillis = (System.nanoTime() - start - turn.writeNanos - turn.waitNanos) / 1000000;
+                writeMillis = turn.writeNanos / 1000000;
+            } finally {
+                turn.release();
+            }
+
+            start = System.nanoTime();
+            converter.write(output);
+            writeMillis += (System.nanoTime() - start) / 1000000;
+
+            return new Result(input, output.getOutputFile(), null, readMillis, renderMillis, writeMillis);
+        } catch (IOException | RuntimeException ex) {
+            return new Result(input, null, ex, readMillis, renderMillis, writeMillis);
+        } finally {
+            filePermits.release();
+        }
+    }
+
+    /**
+     * Write a report of every file's result, as CSV.
+     *
+     * @param results the results
+     * @param out where to write the report
+     *
+     * @throws IOException if there was an error writing the report
+     */
+    public static void writeReport(List<Result> results, Appendable out) throws IOException {
+        out.append("input,output,status,read_ms,render_ms,write_ms,error\r\n");
+
+        for (var result : results) {
+            out.append(quote(result.input.getPath())).append(',')
+                    .append(quote((result.output != null) ? result.output.getPath() : "")).append(',')
+                    .append(result.isConverted() ? "converted" : "failed").append(',')
+                    .append(String.valueOf(result.readMillis)).append(',')
+                    .append(String.valueOf(result.renderMillis)).append(',')
+                    .append(String.valueOf(result.writeMillis)).append(',')
+                    .append(quote((result.error != null) ? String.valueOf(result.error.getMessage()) : ""))
+                    .append("\r\n");
+        }
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+}
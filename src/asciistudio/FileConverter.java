@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciistudio;
+
+import asciilib.AsciiRenderer;
+import asciilib.FileUtil;
+import asciilib.ImageLoader;
+import asciilib.ImageSamplingParams;
+import asciilib.Palette;
+import giflib.Gif;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
+
+/**
+ * Convert image files to ASCII art files without the main window, the same
+ * way the main window imports and exports them. Converting a file is split
+ * into reading it, rendering it and writing it, so the steps can be run on
+ * different threads.
+ *
+ * @author Ian Martinez
+ */
+public class FileConverter {
+
+    // Renders with more samples than this are saved as they render, instead
+    // of being rendered into memory first
+    private static final long MAX_BUFFERED_SAMPLES = 256 * 1024;
+
+    private final Palette palette; // The palette to render with
+    private final RenderType renderType; // TEXT, STILL_IMAGE or GIF
+    private double samplingRatio = 0; // 0 to use the palette's sampling ratio
+    private File outputDirectory; // Null to save next to the input file
+    private boolean parallel = true; // If each file is rendered in parallel
+    private int pngCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int pngCompressionStrategy = Deflater.DEFAULT_STRATEGY;
+
+    /**
+     * A file that has been read, ready to render.
+     */
+    public static final class Source {
+
+        private final File input;
+        private final BufferedImage image; // A still image, or the first frame of a GIF
+        private final Gif gif; // Null if not a GIF
+        private final ImageSamplingParams samplingParams;
+        private final File outputDirectory; // Null to use the converter's
+
+        private Source(File input, BufferedImage image, Gif gif, ImageSamplingParams samplingParams, File outputDirectory) {
+            this.input = input;
+            this.image = image;
+            this.gif = gif;
+            this.samplingParams = samplingParams;
+            this.outputDirectory = outputDirectory;
+        }
+
+        /**
+         * @return the input file
+         */
+        public File getInput() {
+            return input;
+        }
+
+    }
+
+    /**
+     * A file that has been rendered, ready to write. Text, large renders and
+     * GIFs are written as they render, so they are already written.
+     */
+    public static final class Output {
+
+        private final AsciiRenderer renderer;
+        private final File outputFile;
+        private final BufferedImage image; // The rendered image, if it is in memory
+
+        private Output(AsciiRenderer renderer, File outputFile, BufferedImage image) {
+            this.renderer = renderer;
+            this.outputFile = outputFile;
+            this.image = image;
+        }
+
+        /**
+         * @return the file the output is written to
+         */
+        public File getOutputFile() {
+            return outputFile;
+        }
+
+    }
+
+    /**
+     * Create a new FileConverter.
+     *
+     * @param palette the palette to render with
+     * @param renderType {@link RenderType#TEXT} to save text,
+     * {@link RenderType#STILL_IMAGE} to save PNGs, or {@link RenderType#GIF}
+     * to save GIFs as animated GIFs and other images as PNGs
+     */
+    public FileConverter(Palette palette, RenderType renderType) {
+        if (renderType == RenderType.PREVIEW) {
+            throw new IllegalArgumentException("Previews can't be saved to a file");
+        }
+
+        this.palette = palette;
+        this.renderType = renderType;
+    }
+
+    /**
+     * Check if a file is an image that can be converted.
+     *
+     * @param file the file
+     *
+     * @return if the file is an image
+     */
+    public static boolean isImageFile(File file) {
+        return switch (FileUtil.getExt(file.getName())) {
+            case "jpeg", "jpg", "gif", "png" ->
+                true;
+            default ->
+                false;
+        };
+    }
+
+    /**
+     * Read a file, only as large as it will be sampled.
+     *
+     * @param input the image file
+     *
+     * @return the file, ready to render
+     *
+     * @throws IOException if the file couldn't be read
+     */
+    public Source read(File input) throws IOException {
+        return read(input, null);
+    }
+
+    /**
+     * Read a file, only as large as it will be sampled, to be saved in a
+     * particular directory.
+     *
+     * @param input the image file
+     * @param outputDirectory the directory to save the output file in, or
+     * null to use the converter's
+     *
+     * @return the file, ready to render
+     *
+     * @throws IOException if the file couldn't be read
+     */
+    public Source read(File input, File outputDirectory) throws IOException {
+        var path = input.getPath();
+
+        if (FileUtil.getExt(path).equals("gif")) {
+            var gif = new Gif(path);
+            BufferedImage firstFrame;
+
+            try {
+                firstFrame = gif.getFrameImage(0);
+            } catch (RuntimeException ex) { // The GIF couldn't be opened
+                gif.close();
+                throw new IOException("Couldn't read " + path, ex);
+            }
+
+            return new Source(input, firstFrame, gif, getSamplingParams(firstFrame.getWidth(), firstFrame.getHeight()), outputDirectory);
+        } else {
+            var size = ImageLoader.getSize(input);
+            var params = getSamplingParams(size.width, size.height);
+            var image = ImageLoader.read(input, ImageLoader.getSubsampling(params));
+
+            return new Source(input, image, null, params, outputDirectory);
+        }
+    }
+
+    /**
+     * Render a file that has been read. Small images are rendered into
+     * memory, to be written by {@link #write(Output)}, while text, large
+     * images and GIFs are saved as they render.
+     *
+     * @param source the file that has been read
+     *
+     * @return the rendered file
+     *
+     * @throws IOException if there was an error saving a file as it rendered
+     */
+    public Output render(Source source) throws IOException {
+        return render(source, null);
+    }
+
+    /**
+     * Render a file that has been read, the same as
+     * {@link #render(Source)}, writing files that are saved as they render
+     * through a wrapper around the output file's stream, such as to time
+     * the writes.
+     *
+     * @param source the file that has been read
+     * @param outputWrapper wraps the output file's stream, or null
+     *
+     * @return the rendered file
+     *
+     * @throws IOException if there was an error saving a file as it rendered
+     */
+    public Output render(Source source, UnaryOperator<OutputStream> outputWrapper) throws IOException {
+        var renderer = new AsciiRenderer(palette, source.samplingParams);
+        renderer.setParallel(parallel);
+        renderer.setIndexedOutput(true); // Smaller, and faster to save
+        renderer.setPngCompressionLevel(pngCompressionLevel);
+        renderer.setPngCompressionStrategy(pngCompressionStrategy);
+
+        var outputFile = getOutputFile(source);
+
+        try {
+            if (renderType == RenderType.TEXT) {
+                try (var writer = new BufferedWriter(new OutputStreamWriter(openOutput(outputFile, outputWrapper)))) {
+                    renderer.renderText(source.image, writer);
+                }
+
+                return new Output(renderer, outputFile, null);
+            }
+
+            if (renderType == RenderType.GIF && source.gif != null) {
+                try (var out = openOutput(outputFile, outputWrapper)) {
+                    renderer.renderGif(source.gif, out);
+                }
+
+                return new Output(renderer, outputFile, null);
+            }
+
+            var params = source.samplingParams;
+            if ((long) params.getSampleWidth() * params.getSampleHeight() > MAX_BUFFERED_SAMPLES) {
+                try (var out = openOutput(outputFile, outputWrapper)) {
+                    renderer.renderPng(source.image, out);
+                }
+
+                return new Output(renderer, outputFile, null);
+            }
+
+            return new Output(renderer, outputFile, renderer.renderImage(source.image));
+        } finally {
+            if (source.gif != null) {
+                source.gif.close();
+            }
+        }
+    }
+
+    /**
+     * Open an output file to save to as it renders.
+     *
+     * @param outputFile the output file
+     * @param outputWrapper wraps the file's stream, or null
+     *
+     * @return the buffered stream
+     *
+     * @throws IOException if the file couldn't be opened
+     */
+    private static OutputStream openOutput(File outputFile, UnaryOperator<OutputStream> outputWrapper) throws IOException {
+        OutputStream out = new FileOutputStream(outputFile);
+        if (outputWrapper != null) {
+            out = outputWrapper.apply(out);
+        }
+
+        return new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * Write a rendered file, if it wasn't written as it rendered.
+     *
+     * @param output the rendered file
+     *
+     * @throws IOException if there was an error writing the file
+     */
+    public void write(Output output) throws IOException {
+        if (output.image != null) {
+            output.renderer.saveRenderedImage(output.outputFile.getPath(), output.image);
+        }
+    }
+
+    /**
+     * Read, render and write a file.
+     *
+     * @param input the image file
+     *
+     * @return the output file
+     *
+     * @throws IOException if there was an error reading or writing a file
+     */
+    public File convert(File input) throws IOException {
+        var output = render(read(input));
+        write(output);
+
+        return output.getOutputFile();
+    }
+
+    /**
+     * Get the file a file that has been read is saved to, named the way the
+     * main window names exported files.
+     *
+     * @param source the file that has been read
+     *
+     * @return the output file
+     */
+    private File getOutputFile(Source source) {
+        var directory = (source.outputDirectory != null) ? source.outputDirectory
+                : (outputDirectory != null) ? outputDirectory
+                : source.input.getAbsoluteFile().getParentFile();
+        var name = FileUtil.removeExt(source.input.getName()) + " ASCII";
+
+        if (renderType == RenderType.TEXT) {
+            name += ".txt";
+        } else if (renderType == RenderType.GIF && source.gif != null) {
+            name += ".gif";
+        } else {
+            name += ".png";
+        }
+
+        return new File(directory, name);
+    }
+
+    private ImageSamplingParams getSamplingParams(int width, int height) {
+        var params = palette.getSamplingParams(width, height);
+        if (samplingRatio > 0) {
+            params.setSamplingRatio(samplingRatio);
+        }
+
+        return params;
+    }
+
+    /**
+     * @return the sampling ratio, or 0 if the palette's is used
+     */
+    public double getSamplingRatio() {
+        return samplingRatio;
+    }
+
+    /**
+     * @param samplingRatio the sampling ratio, or 0 to use the palette's
+     */
+    public void setSamplingRatio(double samplingRatio) {
+        this.samplingRatio = samplingRatio;
+    }
+
+    /**
+     * @return the directory output files are saved in, or null if they are
+     * saved next to the input files
+     */
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * @param outputDirectory the directory to save output files in, or null
+     * to save them next to the input files
+     */
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * @return if each file is rendered in parallel
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Set if each file should be rendered in parallel. When many files are
+     * converted at once, it's faster to render each one on a single thread.
+     *
+     * @param parallel if each file should be rendered in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return the deflate compression level PNGs are saved with
+     */
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    /**
+     * Set how hard to compress PNGs. Lower levels save large images much
+     * faster, for slightly bigger files.
+     *
+     * @param pngCompressionLevel from 0 (no compression) to 9 (best
+     * compression), or {@link Deflater#DEFAULT_COMPRESSION}
+     *
+     * @throws IllegalArgumentException if the level isn't valid
+     */
+    public void setPngCompressionLevel(int pngCompressionLevel) {
+        if ((pngCompressionLevel < 0 || pngCompressionLevel > 9) && pngCompressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid PNG compression level: " + pngCompressionLevel);
+        }
+
+        this.pngCompressionLevel = pngCompressionLevel;
+    }
+
+    /**
+     * @return the deflate compression strategy PNGs are saved with
+     */
+    public int getPngCompressionStrategy() {
+        return pngCompressionStrategy;
+    }
+
+    /**
+     * @param pngCompressionStrategy {@link Deflater#DEFAULT_STRATEGY},
+     * {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     *
+     * @throws IllegalArgumentException if the strategy isn't valid
+     */
+    public void setPngCompressionStrategy(int pngCompressionStrategy) {
+        if (pngCompressionStrategy != Deflater.DEFAULT_STRATEGY && pngCompressionStrategy != Deflater.FILTERED
+                && pngCompressionStrategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid PNG compression strategy: " + pngCompressionStrategy);
+        }
+
+        this.pngCompressionStrategy = pngCompressionStrategy;
+    }
+
+    /**
+     * Get a deflate compression strategy from its name.
+     *
+     * @param name default, filtered or huffman
+     *
+     * @return the strategy
+     *
+     * @throws IllegalArgumentException if there is no strategy with the name
+     */
+    static int parsePngCompressionStrategy(String name) {
+        return switch (name.toLowerCase()) {
+            case "default" ->
+                Deflater.DEFAULT_STRATEGY;
+            case "filtered" ->
+                Deflater.FILTERED;
+            case "huffman" ->
+                Deflater.HUFFMAN_ONLY;
+            default ->
+                throw new IllegalArgumentException("Invalid PNG compression strategy: " + name);
+        };
+    }
+
+}
@@ -17,18 +17,24 @@
 package asciistudio;
 
 import asciilib.AsciiRenderer;
+import asciilib.ImageLoader;
 import asciilib.ImageSamplingParams;
 import asciilib.Palette;
+import asciilib.RenderCache;
+import asciilib.SampleCache;
 import asciilib.FileUtil;
 import giflib.Gif;
+import java.awt.Dimension;
 import java.awt.HeadlessException;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import javax.imageio.ImageIO;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
@@ -42,8 +48,15 @@ public final class MainWindow extends javax.swing.JFrame {
     public boolean isGif = false; // If the source image is a GIF or still image
     public Gif sourceGif; // The source image if it's a GIF
     public BufferedImage sourceCurrentFrame; // If a GIF, the current frame, if not the whole image
+    public Dimension sourceSize; // The source image's full size, which a still image may have been read smaller than
+    public int sourceSubsampling = 1; // How much a still image was subsampled when it was read
+    private transient SwingWorker<BufferedImage, Void> sourceReader; // Reads more of a still image in the background
+    private int sourceReaderSubsampling; // The subsampling the source reader is reading at
     public BufferedImage renderedCurrentFrame; // The current frame that has been rendered
     public ImageSamplingParams samplingParams; // The way to resize the image for rendering
+    private final transient PreviewScheduler previewScheduler = new PreviewScheduler(this); // Runs one preview at a time
+    private final transient RenderCache renderCache = new RenderCache(); // Recent previews and exports of the source
+    private final transient SampleCache sampleCache = new SampleCache(); // Recent samples of the source
 
     // File dialogs
     JFileChooser importImageDialog = new JFileChooser();
@@ -94,6 +107,11 @@ public final class MainWindow extends javax.swing.JFrame {
         // Set render progress border
         progressPanelContainer.setBorder(javax.swing.BorderFactory.createTitledBorder("Render Progress"));
 
+        // Refresh the preview as the sampling ratio or frame are changed,
+        // once they stop changing
+        sampleRatioSpinner.addChangeListener(e -> schedulePreview());
+        frameSpinner.addChangeListener(e -> schedulePreview());
+
         // Set icon
         try {
             this.setIconImage(ImageIO.read(getClass().getResource("/asciiicons/48.png")));
@@ -124,24 +142,124 @@ public final class MainWindow extends javax.swing.JFrame {
         if (isGif) {
             var frameSpinnerValue = (Integer) frameSpinner.getValue();
             sourceCurrentFrame = sourceGif.getFrameImage(frameSpinnerValue);
+        } else {
+            var subsampling = ImageLoader.getSubsampling(samplingParams);
+
+            // The samples got smaller, so read more of the image, unless it
+            // is already being read in enough detail
+            if (subsampling < sourceSubsampling && (sourceReader == null || subsampling < sourceReaderSubsampling)) {
+                readSourceImage(subsampling);
+            }
+        }
+    }
+
+    /**
+     * Read more of a still image in the background, and refresh the preview
+     * with it once it has been read. Until then, previews use the image as
+     * it was read before.
+     *
+     * @param subsampling how much to subsample the image
+     */
+    private void readSourceImage(int subsampling) {
+        if (sourceReader != null) {
+            sourceReader.cancel(false); // Its image isn't detailed enough anymore
+        }
+
+        var path = sourceImagePath;
+        sourceReaderSubsampling = subsampling;
+        sourceReader = new SwingWorker<>() {
+            @Override
+            protected BufferedImage doInBackground() throws IOException {
+                return ImageLoader.read(new File(path), subsampling);
+            }
+
+            @Override
+            protected void done() {
+                if (sourceReader != this || isCancelled()) {
+                    return;
+                }
+
+                sourceReader = null;
+
+                // Skip it if another image was imported while it was read
+                if (isGif || !path.equals(sourceImagePath) || subsampling >= sourceSubsampling) {
+                    return;
+                }
+
+                try {
+                    var image = get();
+                    sampleCache.invalidate(sourceCurrentFrame);
+                    sourceCurrentFrame = image;
+                    sourceSubsampling = subsampling;
+                    originalImageView.setIcon(new StretchIcon(sourceCurrentFrame));
+                    refreshPreview();
+                } catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(MainWindow.this, "Error importing " + path);
+                }
+            }
+        };
+        sourceReader.execute();
+    }
+
+    /**
+     * Close the source that is being replaced. The preview in progress is
+     * cancelled first, since it could still be reading from the source.
+     */
+    private void closeSource() {
+        previewScheduler.cancel();
+
+        if (sourceGif != null) {
+            sourceGif.close();
         }
     }
 
-    private void refreshPreview() {
+    private void schedulePreview() {
+        if (sourceCurrentFrame != null) {
+            previewScheduler.schedule();
+        }
+    }
+
+    void refreshPreview() {
         if (sourceCurrentFrame != null) {
             refreshCurrentFrame();
             sampleWidthLabel.setText(samplingParams.getSampleWidth() + " px");
             sampleHeightLabel.setText(samplingParams.getSampleHeight() + " px");
 
             // Create a renderer for the preview and run it in the background
-            var renderer = new AsciiRenderer(currentPalette.getPalette(), samplingParams);
+            var renderer = createRenderer();
             var renderTask = new BackgroundRenderer(renderer, RenderType.PREVIEW, this);
             renderTask.setSourceImage(sourceCurrentFrame);
-            renderTask.useRenderUI(true);
-            renderTask.execute();
+            renderTask.setProgressive(true);
+            useRenderCache(renderTask);
+            previewScheduler.run(renderTask);
         }
     }
 
+    /**
+     * Create a renderer with the current palette and sampling parameters,
+     * that reuses recent samples of the source.
+     *
+     * @return the renderer
+     */
+    private AsciiRenderer createRenderer() {
+        var renderer = new AsciiRenderer(currentPalette.getPalette(), samplingParams);
+        renderer.setSampleCache(sampleCache);
+
+        return renderer;
+    }
+
+    /**
+     * Let a still image or text render reuse the renders of the current
+     * frame with the same settings.
+     *
+     * @param renderTask the render
+     */
+    private void useRenderCache(BackgroundRenderer renderTask) {
+        var source = isGif ? sourceGif : sourceCurrentFrame;
+        var frame = isGif ? (Integer) frameSpinner.getValue() : 0;
+        renderTask.setRenderCache(renderCache, source, frame);
+    }
+
     public void enableEditing(boolean enable) {
         // File
         exportImageMenuItem.setEnabled(enable);
@@ -806,10 +924,14 @@ public final class MainWindow extends javax.swing.JFrame {
                     var importedCurrentFrame = importedGif.getFrameImage(0);
 
                     // All importing succeeded, so update data
+                    closeSource();
+                    renderCache.clear(); // Nothing rendered or sampled from the old source is needed
+                    sampleCache.clear();
                     sourceImagePath = importedPath;
                     isGif = true;
                     sourceGif = importedGif;
                     sourceCurrentFrame = importedCurrentFrame;
+                    sourceSize = new Dimension(importedCurrentFrame.getWidth(), importedCurrentFrame.getHeight());
 
                     // Set frame spinner
                     var model = new SpinnerNumberModel(0, 0, sourceGif.getFrameCount() - 1, 1);
@@ -818,13 +940,23 @@ public final class MainWindow extends javax.swing.JFrame {
                     // Set the export image dialog to export GIFs by default
                     exportImageDialog.setFileFilter(gifImageFilter);
                 } else { // Still image
-                    var importedImage = ImageIO.read(new File(importedPath));
+                    // Only read as much of the image as the samples need
+                    var importedFile = new File(importedPath);
+                    var importedSize = ImageLoader.getSize(importedFile);
+                    var importedParams = currentPalette.getPalette().getSamplingParams(importedSize.width, importedSize.height);
+                    var importedSubsampling = ImageLoader.getSubsampling(importedParams);
+                    var importedImage = ImageLoader.read(importedFile, importedSubsampling);
 
                     // All importing succeeded, so update data
+                    closeSource();
+                    renderCache.clear(); // Nothing rendered or sampled from the old source is needed
+                    sampleCache.clear();
                     sourceImagePath = importedPath;
                     isGif = false;
                     sourceGif = null;
                     sourceCurrentFrame = importedImage;
+                    sourceSize = importedSize;
+                    sourceSubsampling = importedSubsampling;
 
                     // Set frame spinner
                     var model = new SpinnerNumberModel(0, 0, 0, 1);
@@ -842,11 +974,11 @@ public final class MainWindow extends javax.swing.JFrame {
             // Update UI
             originalImageView.setIcon(new StretchIcon(sourceCurrentFrame));
             frameCountLabel.setText(String.valueOf(isGif ? sourceGif.getFrameCount() : 1));
-            widthLabel.setText(sourceCurrentFrame.getWidth() + "px");
-            heightLabel.setText(sourceCurrentFrame.getHeight() + "px");
+            widthLabel.setText(sourceSize.width + "px");
+            heightLabel.setText(sourceSize.height + "px");
 
             // Set sampling image            
-            samplingParams = currentPalette.getPalette().getSamplingParams(sourceCurrentFrame.getWidth(), sourceCurrentFrame.getHeight());
+            samplingParams = currentPalette.getPalette().getSamplingParams(sourceSize.width, sourceSize.height);
             sampleRatioSpinner.setValue(samplingParams.getSamplingRatio());
 
             // Render image and put it in the preview
@@ -938,12 +1070,13 @@ public final class MainWindow extends javax.swing.JFrame {
 
             if (exportTextDialog.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
                 refreshSampleParams();
-                var renderer = new AsciiRenderer(currentPalette.getPalette(), samplingParams);
+                var renderer = createRenderer();
                 var outputFile = getSelectedFileWithExtension(exportTextDialog);
 
                 // Render the text and save to file on a background thread
                 var renderTask = new BackgroundRenderer(renderer, RenderType.TEXT, this);
                 renderTask.setSourceImage(sourceCurrentFrame);
+                useRenderCache(renderTask);
                 renderTask.useRenderUI(true);
                 renderTask.setOutputFile(outputFile.getAbsolutePath());
                 renderTask.execute();
@@ -974,7 +1107,7 @@ public final class MainWindow extends javax.swing.JFrame {
 
             if (exportImageDialog.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
                 refreshSampleParams();
-                var renderer = new AsciiRenderer(currentPalette.getPalette(), samplingParams);
+                var renderer = createRenderer();
                 var outputFile = getSelectedFileWithExtension(exportImageDialog);
                 var outputPath = outputFile.getAbsolutePath();
 
@@ -989,6 +1122,7 @@ public final class MainWindow extends javax.swing.JFrame {
                 } else { // Still image                                       
                     var renderTask = new BackgroundRenderer(renderer, RenderType.STILL_IMAGE, this);
                     renderTask.setSourceImage(sourceCurrentFrame);
+                    useRenderCache(renderTask);
                     renderTask.useRenderUI(true);
                     renderTask.setOutputFile(outputPath);
                     renderTask.execute();
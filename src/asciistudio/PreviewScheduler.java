@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2025 Ian Martinez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package asciistudio;
+
+import javax.swing.Timer;
+
+/**
+ * Run preview renders one at a time, so the preview always ends up showing
+ * the latest settings. Starting a preview cancels the one in progress, and
+ * bursts of changes to the settings are gathered into a single preview.
+ *
+ * Only used from the event dispatch thread.
+ *
+ * @author Ian Martinez
+ */
+public class PreviewScheduler {
+
+    // How long to wait for the settings to stop changing before rendering
+    private static final int COALESCE_DELAY = 150;
+
+    private final Timer delayTimer; // Starts the scheduled preview
+    private BackgroundRenderer currentPreview; // The preview rendering, if any
+
+    /**
+     * Create a new PreviewScheduler.
+     *
+     * @param mainWindow the main window, whose preview is refreshed when the
+     * scheduled preview starts
+     */
+    public PreviewScheduler(MainWindow mainWindow) {
+        delayTimer = new Timer(COALESCE_DELAY, e -> mainWindow.refreshPreview());
+        delayTimer.setRepeats(false);
+    }
+
+    /**
+     * Schedule a preview once the settings stop changing. The preview in
+     * progress is cancelled right away, since it's already out of date.
+     */
+    public void schedule() {
+        cancel();
+        delayTimer.restart();
+    }
+
+    /**
+     * Start a preview now, in place of the preview in progress and any
+     * scheduled preview.
+     *
+     * @param preview the preview render
+     */
+    public void run(BackgroundRenderer preview) {
+        delayTimer.stop();
+        cancel();
+
+        currentPreview = preview;
+        preview.useRenderUI(true);
+        preview.execute();
+    }
+
+    /**
+     * Cancel the preview in progress, if there is one.
+     */
+    public void cancel() {
+        if (currentPreview != null) {
+            currentPreview.cancelRender();
+            currentPreview = null;
+        }
+    }
+
+}
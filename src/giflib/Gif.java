@@ -32,20 +32,32 @@ package giflib;
 
 import java.io.*;
 import java.awt.image.BufferedImage;
-import javax.imageio.stream.*;
 import java.awt.Dimension;
-import static giflib.GifSequenceWriter.getFrames;
 import static java.awt.image.BufferedImage.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A GIF that can be modified in place and opened and saved to the disk.
  */
 public final class Gif {
 
-    private GifFrame[] frames;
+    private GifFrame[] frames; // Null if the frames are read from a file on demand
     private int averageDelay = -1; // Don't calculate until needed
+
+    // Reading frames on demand
+    private GifFrameReader frameReader;
+    private int[] frameDelays;
+    private Map<Integer, GifFrame> recentFrames;
+    private int recentFrameCount = 16;
     private GifSaveProgressWatcher saveProgressWatcher;
+    private int saveThreadCount = Runtime.getRuntime().availableProcessors();
+    private boolean savingDeltaFrames = false;
 
     /**
      * Create a new GIF with an array of image frames and the delay between
@@ -63,7 +75,8 @@ public final class Gif {
     }
 
     /**
-     * Create a new GIF from an existing GIF file.
+     * Create a new GIF from an existing GIF file. The frames are read from
+     * the file as they are needed.
      *
      * @param fileName the name of the GIF file
      */
@@ -80,12 +93,26 @@ public final class Gif {
         this(new BufferedImage[gif.getFrameCount()], gif.getDelay());
 
         // Init empty frames
-        var maxSize = maxSize(gif.getImages());
+        var maxSize = gif.getMaxSize();
         for (GifFrame frame : frames) {
             frame.setImage(new BufferedImage(maxSize.width, maxSize.height, TYPE_INT_ARGB));
         }
     }
 
+    /**
+     * Get the maximum size of this GIF's frames.
+     *
+     * @return the maximum size
+     */
+    private Dimension getMaxSize() {
+        if (frames == null) { // Every frame is composited onto the full canvas
+            var firstFrame = getFrame(0);
+            return new Dimension(firstFrame.getWidth(), firstFrame.getHeight());
+        }
+
+        return maxSize(getImages());
+    }
+
     /**
      * Get the maximum size of an array of images.
      *
@@ -106,33 +133,182 @@ public final class Gif {
     }
 
     /**
-     * Set the frames of this GIF to the frames of an existing GIF file.
+     * Set the frames of this GIF to the frames of an existing GIF file. Only
+     * the GIF's metadata is read up front. Frames are read when they are
+     * needed and the most recently used ones are kept in memory, so GIFs with
+     * many frames don't need to fit in memory.
      *
      * @param fileName the name of the file to open
      */
     public void open(String fileName) {
         averageDelay = -1;
-        frames = getFrames(fileName);
+        frames = null;
+        closeFrameReader();
+
+        try {
+            frameReader = new GifFrameReader(fileName);
+            frameDelays = frameReader.readDelays();
+            recentFrames = new LinkedHashMap<>(16, 0.75f, true);
+        } catch (IOException | RuntimeException ex) {
+            closeFrameReader();
+        }
+    }
+
+    /**
+     * Read a frame from the file, seeking back to the start of the file if
+     * the frame comes before the last frame read.
+     *
+     * @param frameIndex the index of the frame
+     *
+     * @return the frame
+     */
+    private synchronized GifFrame readFrame(int frameIndex) {
+        if (frames != null) { // All of the frames were read while waiting
+            return frames[frameIndex];
+        }
+
+        var frame = recentFrames.get(frameIndex);
+
+        if (frame == null) {
+            if (frameIndex < 0 || frameIndex >= frameDelays.length) {
+                throw new IndexOutOfBoundsException("Frame " + frameIndex + " out of bounds for " + frameDelays.length + " frames");
+            }
+
+            try {
+                if (frameReader.getFrameIndex() > frameIndex) {
+                    frameReader.reset();
+                }
+
+                while (frameReader.getFrameIndex() <= frameIndex) {
+                    frame = frameReader.read();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Error reading frame " + frameIndex, ex);
+            }
+
+            recentFrames.put(frameIndex, frame);
+            if (recentFrames.size() > recentFrameCount) {
+                recentFrames.remove(recentFrames.keySet().iterator().next());
+            }
+        }
+
+        return frame;
+    }
+
+    /**
+     * Read every frame into memory, if they are being read on demand, so the
+     * frames can be modified.
+     */
+    private synchronized void readAllFrames() {
+        if (frames == null && frameReader != null) {
+            var allFrames = new GifFrame[frameDelays.length];
+
+            for (int i = 0; i < allFrames.length; i++) {
+                allFrames[i] = readFrame(i);
+            }
+
+            frames = allFrames;
+            closeFrameReader();
+        }
+    }
+
+    /**
+     * Close the file frames are read from on demand, once the GIF is no
+     * longer needed. If the frames weren't all read into memory, the GIF
+     * can't be used after it is closed.
+     */
+    public synchronized void close() {
+        if (frames == null) {
+            closeFrameReader();
+        }
+    }
+
+    /**
+     * Stop reading frames on demand and close the file.
+     */
+    private void closeFrameReader() {
+        if (frameReader != null) {
+            try {
+                frameReader.close();
+            } catch (IOException ex) {
+                // Nothing left to read from it anyway
+            }
+        }
+
+        frameReader = null;
+        frameDelays = null;
+        recentFrames = null;
     }
 
     /**
      * Save a GIF to a file.
      *
+     * If there is more than one save thread, the frames are compressed on the
+     * save threads while the calling thread writes each one to the file as
+     * soon as it and the frames before it are done. The progress watcher is
+     * called as each frame is written.
+     *
+     * If delta frames are on, every frame after the first only has the part
+     * that changed from the frame before it.
+     *
      * @param fileName the name of the file to save
      *
      * @throws IOException if there was an error saving the file
      */
     public void save(String fileName) throws IOException {
-        try (var output = new FileImageOutputStream(new File(fileName));
-                var writer = new GifSequenceWriter(output, frames[0].getImageType(), getDelay(), true)) {
+        int frameCount = getFrameCount();
+        boolean parallel = saveThreadCount > 1 && frameCount > 1;
+
+        try (var output = new BufferedOutputStream(new FileOutputStream(fileName), 64 * 1024);
+                var writer = new GifEncoder(output, getDelay() * 10, true)) { // Delays are in hundredths of a second
+            writer.setDeltaFrames(savingDeltaFrames);
 
-            for (int i = 0; i < frames.length; i++) {
-                var frame = frames[i];
-                writer.writeToSequence(frame);
+            if (!parallel) {
+                for (int i = 0; i < frameCount; i++) {
+                    var frame = getFrame(i);
+                    writer.writeToSequence(frame);
 
-                if (saveProgressWatcher != null) {
-                    saveProgressWatcher.update(i, frames.length);
+                    if (saveProgressWatcher != null) {
+                        saveProgressWatcher.update(i, frameCount);
+                    }
                 }
+
+                return;
+            }
+
+            var executor = Executors.newFixedThreadPool(Math.min(saveThreadCount, frameCount));
+            var pending = new ArrayDeque<Future<GifEncoder.EncodedFrame>>();
+            int maxPending = saveThreadCount * 2; // Enough to keep every thread busy
+            int nextFrame = 0;
+            GifFrame previousFrame = null;
+
+            try {
+                for (int i = 0; i < frameCount; i++) {
+                    // Frames are read in order, since they may be read from the file
+                    while (nextFrame < frameCount && pending.size() < maxPending) {
+                        var frame = getFrame(nextFrame++);
+                        var previous = previousFrame;
+                        pending.add(executor.submit(() -> writer.encode(frame, previous)));
+                        previousFrame = frame;
+                    }
+
+                    writer.write(pending.remove().get());
+
+                    if (saveProgressWatcher != null) {
+                        saveProgressWatcher.update(i, frameCount);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while saving GIF", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+
+                throw new IOException("Error encoding GIF frame", ex.getCause());
+            } finally {
+                executor.shutdownNow();
             }
         }
     }
@@ -142,8 +318,8 @@ public final class Gif {
      *
      * @return the number of frames
      */
-    public int getFrameCount() {
-        return frames.length;
+    public synchronized int getFrameCount() {
+        return (frames == null) ? frameDelays.length : frames.length;
     }
 
     /**
@@ -154,7 +330,7 @@ public final class Gif {
      * @return the frame
      */
     public GifFrame getFrame(int frameIndex) {
-        return frames[frameIndex];
+        return (frames == null) ? readFrame(frameIndex) : frames[frameIndex];
     }
 
     /**
@@ -164,6 +340,7 @@ public final class Gif {
      * @param frame the frame
      */
     public void setFrame(int pos, GifFrame frame) {
+        readAllFrames();
         frames[pos] = frame;
     }
 
@@ -185,6 +362,7 @@ public final class Gif {
      * @param img the image
      */
     public void setFrameImage(int frameIndex, BufferedImage img) {
+        readAllFrames();
         frames[frameIndex].setImage(img);
     }
 
@@ -195,8 +373,8 @@ public final class Gif {
      *
      * @return the frame's delay
      */
-    public int getFrameDelay(int frameIndex) {
-        return frames[frameIndex].getDelay();
+    public synchronized int getFrameDelay(int frameIndex) {
+        return (frames == null) ? frameDelays[frameIndex] : frames[frameIndex].getDelay();
     }
 
     /**
@@ -206,6 +384,7 @@ public final class Gif {
      * @param delay the new delay
      */
     public void setFrameDelay(int frameIndex, int delay) {
+        readAllFrames();
         frames[frameIndex].setDelay(delay);
     }
 
@@ -215,6 +394,7 @@ public final class Gif {
      * @param delay the delay to set
      */
     public void setAllFramesDelay(int delay) {
+        readAllFrames();
         for (var frame : frames) {
             frame.setDelay(delay);
         }
@@ -223,17 +403,17 @@ public final class Gif {
     /**
      * Get the average delay between frames.
      *
-     * @return the average frame delay
+     * @return the average frame delay, in hundredths of a second
      */
     public int getDelay() {
         if (averageDelay == -1) { // Not calculated
             int total = 0;
 
-            for (GifFrame frame : frames) {
-                total += frame.getDelay();
+            for (int i = 0; i < getFrameCount(); i++) {
+                total += getFrameDelay(i);
             }
 
-            averageDelay = total / frames.length;
+            averageDelay = total / getFrameCount();
         }
 
         return averageDelay;
@@ -247,13 +427,60 @@ public final class Gif {
     public BufferedImage[] getImages() {
         var images = new ArrayList<BufferedImage>();
 
-        for (var frame : frames) {
-            images.add(frame.getImage());
+        for (int i = 0; i < getFrameCount(); i++) {
+            images.add(getFrame(i).getImage());
         }
 
         return images.toArray(new BufferedImage[images.size()]);
     }
 
+    /**
+     * @return the number of recently used frames kept in memory, when frames
+     * are read on demand
+     */
+    public int getRecentFrameCount() {
+        return recentFrameCount;
+    }
+
+    /**
+     * @param recentFrameCount the number of recently used frames to keep in
+     * memory, when frames are read on demand
+     */
+    public void setRecentFrameCount(int recentFrameCount) {
+        this.recentFrameCount = Math.max(1, recentFrameCount);
+    }
+
+    /**
+     * @return the number of threads frames are compressed on when saving
+     */
+    public int getSaveThreadCount() {
+        return saveThreadCount;
+    }
+
+    /**
+     * @param saveThreadCount the number of threads to compress frames on when
+     * saving, or 1 to save one frame at a time on the calling thread
+     */
+    public void setSaveThreadCount(int saveThreadCount) {
+        this.saveThreadCount = Math.max(1, saveThreadCount);
+    }
+
+    /**
+     * @return true if only the part of each frame that changed from the frame
+     * before it is saved
+     */
+    public boolean isSavingDeltaFrames() {
+        return savingDeltaFrames;
+    }
+
+    /**
+     * @param savingDeltaFrames true to only save the part of each frame that
+     * changed from the frame before it
+     */
+    public void setSavingDeltaFrames(boolean savingDeltaFrames) {
+        this.savingDeltaFrames = savingDeltaFrames;
+    }
+
     /**
      * @return the saveProgressWatcher
      */
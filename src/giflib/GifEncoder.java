@@ -0,0 +1,502 @@
+/**
+ * GifEncoder.java:
+ * Writes animated GIFs without going through ImageIO.
+ *
+ * ---
+ * Written by: Ian Martinez
+ * ---
+ *
+ * This work is licensed under the Creative Commons Attribution 3.0 Unported
+ * License. To view a copy of this license, visit
+ * http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ * Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA.
+ */
+package giflib;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a sequence of frames as an animated GIF. It writes the same GIF
+ * {@link GifSequenceWriter} does (the GIF loops with a NETSCAPE2.0
+ * extension) but it indexes and compresses the frames itself, which is much
+ * faster for images with few colors, like ASCII art. Each frame is written
+ * with its own delay, and frames without one are written with the delay the
+ * encoder was created with.
+ *
+ * If the colors of the frames are known ahead of time, they can be given with
+ * {@link #setColorTable}, which skips finding the colors of each frame.
+ *
+ * Every frame is compressed on its own, so frames can be encoded on several
+ * threads at once with {@link #encode} and then written in order with
+ * {@link #write}.
+ *
+ * With delta frames on, each frame is compared to the frame before it, and
+ * only the rectangle of cells that changed is written, with the unchanged
+ * cells in it left transparent. Setting the cell size to the size of a glyph
+ * keeps the changed areas of ASCII art lined up with whole characters.
+ *
+ * With duplicate merging on, a frame that is the same as the frame before it
+ * isn't written; instead the frame before it is shown for longer.
+ *
+ * @author Ian Martinez
+ */
+public class GifEncoder implements AutoCloseable {
+
+    private static final ThreadLocal<LzwCompressor> compressors = ThreadLocal.withInitial(LzwCompressor::new);
+
+    private final OutputStream output;
+    private final int delay; // In hundredths of a second, for frames without their own
+    private final int loop;
+    private final String comment;
+    private int[] colorTable;
+    private boolean deltaFrames = false;
+    private int cellWidth = 1, cellHeight = 1;
+    private boolean mergingDuplicates = true;
+
+    private boolean headerWritten = false;
+    private GifFrame previousFrame; // The last frame written with writeToSequence()
+    private EncodedFrame pendingFrame; // Held back in case the frames after it are duplicates
+    private int pendingDelay;
+
+    /**
+     * A frame that has been indexed and compressed, ready to be written.
+     */
+    public static final class EncodedFrame {
+
+        private final int width; // Of the whole canvas, not just the part that is written
+        private final int height;
+        private final int delay; // In hundredths of a second
+        private final byte[] data; // Starts with the graphic control extension
+        private final boolean duplicate; // The same as the frame before it
+
+        private EncodedFrame(int width, int height, int delay, byte[] data, boolean duplicate) {
+            this.width = width;
+            this.height = height;
+            this.delay = delay;
+            this.data = data;
+            this.duplicate = duplicate;
+        }
+
+        /**
+         * @return the size of the encoded frame in bytes
+         */
+        public int getSize() {
+            return data.length;
+        }
+
+    }
+
+    /**
+     * Creates a new GifEncoder
+     *
+     * @param output the stream to be written to
+     * @param timeBetweenFramesMS the time between frames in milliseconds
+     * @param loopContinuously whether the GIF should loop repeatedly
+     * @param comment the comment to add
+     */
+    public GifEncoder(OutputStream output, int timeBetweenFramesMS, boolean loopContinuously, String comment) {
+        this.output = output;
+        this.delay = timeBetweenFramesMS / 10;
+        this.loop = loopContinuously ? 0 : 1;
+        this.comment = comment;
+    }
+
+    /**
+     * Creates a new GifEncoder
+     *
+     * @param output the stream to be written to
+     * @param timeBetweenFramesMS the time between frames in milliseconds
+     * @param loopContinuously whether the GIF should loop repeatedly
+     */
+    public GifEncoder(OutputStream output, int timeBetweenFramesMS, boolean loopContinuously) {
+        this(output, timeBetweenFramesMS, loopContinuously, "Created by GifLib");
+    }
+
+    /**
+     * Set the colors every frame is indexed with. Pixels with colors that
+     * aren't in the table are written as the closest color in it.
+     *
+     * @param colors the colors, at most 256, or null to pick the colors of
+     * each frame from its image
+     */
+    public void setColorTable(Color... colors) {
+        if (colors == null) {
+            colorTable = null;
+            return;
+        }
+
+        if (colors.length == 0 || colors.length > IndexedImage.MAX_COLORS) {
+            throw new IllegalArgumentException("A color table must have between 1 and 256 colors");
+        }
+
+        colorTable = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            colorTable[i] = colors[i].getRGB();
+        }
+    }
+
+    /**
+     * Write a frame.
+     *
+     * @param frame the frame to write
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    public void writeToSequence(GifFrame frame) throws IOException {
+        write(encode(frame, previousFrame));
+        previousFrame = (deltaFrames || mergingDuplicates) ? frame : null;
+    }
+
+    /**
+     * Index and compress a frame without writing it, as a whole frame. This
+     * can be called from any thread, and from several threads at once.
+     *
+     * @param frame the frame to encode
+     *
+     * @return the encoded frame
+     */
+    public EncodedFrame encode(GifFrame frame) {
+        return encode(frame, null);
+    }
+
+    /**
+     * Index and compress a frame without writing it. If delta frames are on,
+     * only the part of the frame that is different from the previous frame is
+     * encoded, and if duplicate merging is on, a frame that is the same as the
+     * previous frame is marked to be merged into it. This can be called from
+     * any thread, and from several threads at once.
+     *
+     * @param frame the frame to encode
+     * @param previousFrame the frame that will be written before this one, or
+     * null if this is the first frame
+     *
+     * @return the encoded frame
+     */
+    public EncodedFrame encode(GifFrame frame, GifFrame previousFrame) {
+        var image = frame.getImage();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int frameDelay = (frame.getDelay() >= 0) ? frame.getDelay() : delay;
+        var pixels = IndexedImage.readPixels(image);
+        var out = new ByteArrayOutputStream(Math.max(1024, pixels.length / 4));
+
+        if (previousFrame == null || (!deltaFrames && !mergingDuplicates)
+                || previousFrame.getImage().getWidth() != width
+                || previousFrame.getImage().getHeight() != height) {
+            writeImage(IndexedImage.create(pixels, width, height, colorTable), 0, 0, out);
+            return new EncodedFrame(width, height, frameDelay, out.toByteArray(), false);
+        }
+
+        var previousImage = previousFrame.getImage();
+        var previousPixels = (previousImage == image) ? pixels : IndexedImage.readPixels(previousImage);
+
+        if (mergingDuplicates && Arrays.equals(pixels, previousPixels)) {
+            // Only written if it can't be merged, so keep it small
+            writeUnchanged(pixels, out);
+            return new EncodedFrame(width, height, frameDelay, out.toByteArray(), true);
+        }
+
+        if (deltaFrames) {
+            writeDelta(pixels, previousPixels, width, height, out);
+        } else {
+            writeImage(IndexedImage.create(pixels, width, height, colorTable), 0, 0, out);
+        }
+
+        return new EncodedFrame(width, height, frameDelay, out.toByteArray(), false);
+    }
+
+    /**
+     * Write a frame that doesn't change anything: a single transparent pixel
+     * that just waits out the delay.
+     *
+     * @param pixels the frame's pixels
+     * @param out where to write the frame
+     */
+    private void writeUnchanged(int[] pixels, ByteArrayOutputStream out) {
+        writeImage(IndexedImage.create(new int[]{pixels[0] | IndexedImage.UNCHANGED}, 1, 1, colorTable), 0, 0, out);
+    }
+
+    /**
+     * Write the rectangle of cells that changed from the previous frame, with
+     * the cells that didn't change left transparent. Transparent cells mixed
+     * in with changed cells can break up runs that would compress well, so
+     * the rectangle is also compressed without transparency, and whichever
+     * is smaller is written.
+     *
+     * @param pixels the frame's pixels
+     * @param previousPixels the previous frame's pixels
+     * @param width the width of the frames
+     * @param height the height of the frames
+     * @param out where to write the frame
+     */
+    private void writeDelta(int[] pixels, int[] previousPixels, int width, int height, ByteArrayOutputStream out) {
+        int columns = (width + cellWidth - 1) / cellWidth;
+        int rows = (height + cellHeight - 1) / cellHeight;
+        var changed = new boolean[columns * rows];
+        int minColumn = columns, maxColumn = -1, minRow = rows, maxRow = -1;
+
+        for (int y = 0; y < height; y++) {
+            int row = y / cellHeight;
+            int offset = y * width;
+
+            for (int x = 0; x < width; x++) {
+                if (pixels[offset + x] != previousPixels[offset + x]) {
+                    int column = x / cellWidth;
+                    changed[row * columns + column] = true;
+                    minColumn = Math.min(minColumn, column);
+                    maxColumn = Math.max(maxColumn, column);
+                    minRow = Math.min(minRow, row);
+                    maxRow = Math.max(maxRow, row);
+                }
+            }
+        }
+
+        if (maxColumn < 0) { // Nothing changed
+            writeUnchanged(pixels, out);
+            return;
+        }
+
+        int left = minColumn * cellWidth;
+        int top = minRow * cellHeight;
+        int right = Math.min(width, (maxColumn + 1) * cellWidth);
+        int bottom = Math.min(height, (maxRow + 1) * cellHeight);
+        int regionWidth = right - left;
+        int regionHeight = bottom - top;
+        var region = new int[regionWidth * regionHeight];
+        var opaqueRegion = new int[region.length];
+        boolean hasUnchanged = false;
+
+        for (int y = top; y < bottom; y++) {
+            int row = y / cellHeight;
+            int regionOffset = (y - top) * regionWidth - left;
+
+            for (int x = left; x < right; x++) {
+                int pixel = pixels[y * width + x];
+                opaqueRegion[regionOffset + x] = pixel;
+
+                if (changed[row * columns + x / cellWidth]) {
+                    region[regionOffset + x] = pixel;
+                } else {
+                    region[regionOffset + x] = pixel | IndexedImage.UNCHANGED;
+                    hasUnchanged = true;
+                }
+            }
+        }
+
+        writeImage(IndexedImage.create(opaqueRegion, regionWidth, regionHeight, colorTable), left, top, out);
+
+        if (hasUnchanged) {
+            var transparentOut = new ByteArrayOutputStream(out.size());
+            writeImage(IndexedImage.create(region, regionWidth, regionHeight, colorTable), left, top, transparentOut);
+
+            if (transparentOut.size() < out.size()) {
+                out.reset();
+                out.writeBytes(transparentOut.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Write a frame that was encoded with {@link #encode}. Frames must be
+     * written in order, from one thread at a time.
+     *
+     * Each frame is held back until the next frame is written, so that
+     * duplicate frames after it can be merged into it by adding their own
+     * delays to its delay. Frames with no delay aren't merged, since GIF viewers
+     * show frames with no delay for a default time instead.
+     *
+     * @param frame the encoded frame
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    public void write(EncodedFrame frame) throws IOException {
+        if (!headerWritten) {
+            writeHeader(frame.width, frame.height);
+            headerWritten = true;
+        }
+
+        if (frame.duplicate && pendingFrame != null && pendingDelay > 0 && frame.delay > 0
+                && pendingDelay + frame.delay <= 0xFFFF) {
+            pendingDelay += frame.delay;
+            return;
+        }
+
+        writePendingFrame();
+        pendingFrame = frame;
+        pendingDelay = frame.delay;
+    }
+
+    /**
+     * Write the frame that is being held back, with its own delay and the
+     * delays of any duplicates merged into it.
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    private void writePendingFrame() throws IOException {
+        if (pendingFrame != null) {
+            var data = pendingFrame.data;
+            data[4] = (byte) (pendingDelay & 0xFF); // The delay in the graphic control extension
+            data[5] = (byte) ((pendingDelay >>> 8) & 0xFF);
+            output.write(data);
+            pendingFrame = null;
+        }
+    }
+
+    /**
+     * Write the GIF header, the logical screen descriptor, the looping
+     * extension and the comment.
+     *
+     * @param width the width of the canvas
+     * @param height the height of the canvas
+     *
+     * @throws IOException if the header cannot be written
+     */
+    private void writeHeader(int width, int height) throws IOException {
+        var header = new ByteArrayOutputStream();
+        header.write("GIF89a".getBytes(StandardCharsets.US_ASCII));
+
+        // Logical screen descriptor, with no global color table
+        writeShort(header, width);
+        writeShort(header, height);
+        header.write(0x70); // 8 bits of color resolution
+        header.write(0); // Background color index
+        header.write(0); // Pixel aspect ratio
+
+        // Loop count
+        header.write(0x21);
+        header.write(0xFF);
+        header.write(11);
+        header.write("NETSCAPE2.0".getBytes(StandardCharsets.US_ASCII));
+        header.write(3);
+        header.write(1);
+        writeShort(header, loop);
+        header.write(0);
+
+        if (comment != null && !comment.isEmpty()) {
+            header.write(0x21);
+            header.write(0xFE);
+            writeSubBlocks(header, comment.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        header.writeTo(output);
+    }
+
+    /**
+     * Write a frame's graphic control extension and image.
+     *
+     * @param indexed the frame's indexed image
+     * @param left the x position of the image on the canvas
+     * @param top the y position of the image on the canvas
+     * @param out where to write the frame
+     */
+    private void writeImage(IndexedImage indexed, int left, int top, ByteArrayOutputStream out) {
+        // Graphic control extension. Delta frames are drawn over the frames
+        // before them, so they must not be disposed of.
+        int disposal = deltaFrames ? 1 : 0;
+        int transparentIndex = indexed.getTransparentIndex();
+        out.write(0x21);
+        out.write(0xF9);
+        out.write(4);
+        out.write((disposal << 2) | ((transparentIndex >= 0) ? 1 : 0));
+        writeShort(out, delay); // Replaced with the frame's delay when it is written
+        out.write(Math.max(0, transparentIndex));
+        out.write(0);
+
+        // Image descriptor, with a local color table
+        int colorBits = indexed.getColorBits();
+        out.write(0x2C);
+        writeShort(out, left);
+        writeShort(out, top);
+        writeShort(out, indexed.getWidth());
+        writeShort(out, indexed.getHeight());
+        out.write(0x80 | (colorBits - 1));
+
+        var colors = indexed.getColors();
+        for (int i = 0; i < 1 << colorBits; i++) {
+            int rgb = (i < colors.length) ? colors[i] : 0;
+            out.write(rgb >>> 16);
+            out.write(rgb >>> 8);
+            out.write(rgb);
+        }
+
+        var indices = indexed.getIndices();
+        compressors.get().compress(indices, indices.length, colorBits, out);
+    }
+
+    /**
+     * @return true if only the changed part of each frame is written
+     */
+    public boolean isDeltaFrames() {
+        return deltaFrames;
+    }
+
+    /**
+     * @param deltaFrames true to only write the part of each frame that
+     * changed from the frame before it
+     */
+    public void setDeltaFrames(boolean deltaFrames) {
+        this.deltaFrames = deltaFrames;
+    }
+
+    /**
+     * Set the size of the cells that delta frames are compared in. A cell is
+     * either written whole or left transparent.
+     *
+     * @param cellWidth the width of a cell
+     * @param cellHeight the height of a cell
+     */
+    public void setCellSize(int cellWidth, int cellHeight) {
+        this.cellWidth = Math.max(1, cellWidth);
+        this.cellHeight = Math.max(1, cellHeight);
+    }
+
+    /**
+     * @return true if frames that are the same as the frame before them are
+     * merged into it
+     */
+    public boolean isMergingDuplicates() {
+        return mergingDuplicates;
+    }
+
+    /**
+     * @param mergingDuplicates true to merge frames that are the same as the
+     * frame before them into it, by adding their delays together
+     */
+    public void setMergingDuplicates(boolean mergingDuplicates) {
+        this.mergingDuplicates = mergingDuplicates;
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF); // Little endian
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeSubBlocks(ByteArrayOutputStream out, byte[] data) {
+        for (int offset = 0; offset < data.length; offset += 255) {
+            int size = Math.min(255, data.length - offset);
+            out.write(size);
+            out.write(data, offset, size);
+        }
+
+        out.write(0);
+    }
+
+    /**
+     * Close this GifEncoder object. This does not close the underlying
+     * stream, just finishes off the GIF.
+     *
+     * @throws IOException if the GIF can't be finished
+     */
+    @Override
+    public void close() throws IOException {
+        writePendingFrame();
+        output.write(0x3B); // Trailer
+        output.flush();
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * GifFrameReader.java:
+ * Reads the frames of a GIF file one at a time.
+ *
+ * ---
+ * Written by: Ian Martinez
+ * ---
+ *
+ * This work is licensed under the Creative Commons Attribution 3.0 Unported
+ * License. To view a copy of this license, visit
+ * http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ * Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA.
+ */
+package giflib;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads the frames of a GIF file in order, compositing each frame onto the
+ * frames before it. Only the compositing canvas and the frames needed to
+ * dispose of the next frame are kept in memory, so GIFs of any length can be
+ * read frame by frame.
+ *
+ * @author Ian Martinez
+ */
+public final class GifFrameReader implements AutoCloseable {
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final GifMetadata metadata;
+
+    private int width;
+    private int height;
+    private Color backgroundColor;
+
+    private BufferedImage master; // The canvas frames are composited onto
+    private boolean hasBackround;
+    private int lastx, lasty;
+    private GifFrame lastFrame; // The frame read before the next one
+    private GifFrame lastRestorableFrame; // The last frame that isn't disposed by restoring the previous frame
+    private int frameIndex; // The index of the next frame
+
+    /**
+     * Open a GIF file to read frames from.
+     *
+     * @param fileName the GIF file
+     *
+     * @throws IOException if the file can't be opened or isn't a GIF
+     */
+    public GifFrameReader(String fileName) throws IOException {
+        input = ImageIO.createImageInputStream(new File(fileName));
+        if (input == null) {
+            throw new IIOException("Can't open '" + fileName + "'");
+        }
+
+        var readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IIOException("No GIF Image Readers Exist");
+        }
+
+        reader = readers.next();
+        reader.setInput(input, false, true);
+
+        try {
+            metadata = GifMetadata.read(fileName);
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+
+        width = metadata.getWidth();
+        height = metadata.getHeight();
+        backgroundColor = metadata.getBackgroundColor();
+        reset();
+    }
+
+    /**
+     * Go back to the first frame.
+     */
+    public void reset() {
+        master = null;
+        hasBackround = false;
+        lastx = 0;
+        lasty = 0;
+        lastFrame = null;
+        lastRestorableFrame = null;
+        frameIndex = 0;
+    }
+
+    /**
+     * Read the next frame, composited onto the frames before it.
+     *
+     * @return the next frame, or null if there are no more frames
+     *
+     * @throws IOException if the frame can't be read
+     */
+    public GifFrame read() throws IOException {
+        if (frameIndex >= metadata.getFrameCount()) {
+            return null;
+        }
+
+        BufferedImage image;
+
+        try {
+            image = reader.read(frameIndex);
+        } catch (IndexOutOfBoundsException io) {
+            return null;
+        }
+
+        var delay = metadata.getDelay(frameIndex);
+        var disposal = metadata.getDisposal(frameIndex);
+
+        if (master == null) {
+            master = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            master.createGraphics().setColor(backgroundColor);
+            master.createGraphics().fillRect(0, 0, master.getWidth(), master.getHeight());
+            hasBackround = image.getWidth() == width && image.getHeight() == height;
+            master.createGraphics().drawImage(image, 0, 0, null);
+        } else {
+            int x = metadata.getLeft(frameIndex);
+            int y = metadata.getTop(frameIndex);
+
+            if (disposal.equals("restoreToPrevious")) {
+                var from = lastRestorableFrame.getImage();
+                var model = from.getColorModel();
+                var alpha = from.isAlphaPremultiplied();
+                var raster = from.copyData(null);
+                master = new BufferedImage(model, raster, alpha, null);
+            } else if (disposal.equals("restoreToBackgroundColor") && backgroundColor != null) {
+                if (!hasBackround || frameIndex > 1) {
+                    master.createGraphics().fillRect(lastx, lasty, lastFrame.getWidth(), lastFrame.getHeight());
+                }
+            }
+            master.createGraphics().drawImage(image, x, y, null);
+
+            lastx = x;
+            lasty = y;
+        }
+
+        var model = master.getColorModel();
+        var alpha = master.isAlphaPremultiplied();
+        var raster = master.copyData(null);
+        var copy = new BufferedImage(model, raster, alpha, null);
+        var frame = new GifFrame(copy, delay, disposal);
+        master.flush();
+
+        lastFrame = frame;
+        if (!disposal.equals("restoreToPrevious")) {
+            lastRestorableFrame = frame;
+        }
+        frameIndex++;
+
+        return frame;
+    }
+
+    /**
+     * Get the delay of every frame, without reading the frames' images.
+     *
+     * @return the delay of each frame
+     */
+    public int[] readDelays() {
+        var delays = new int[getFrameCount()];
+
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = metadata.getDelay(i);
+        }
+
+        return delays;
+    }
+
+    /**
+     * @return the number of frames in the GIF
+     */
+    public int getFrameCount() {
+        return metadata.getFrameCount();
+    }
+
+    /**
+     * @return the index of the frame that will be read next
+     */
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * @return the width of the GIF's canvas
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the GIF's canvas
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Close the GIF file.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+
+}
@@ -0,0 +1,280 @@
+/**
+ * GifMetadata.java:
+ * Reads the metadata of a GIF file straight from its blocks.
+ *
+ * ---
+ * Written by: Ian Martinez
+ * ---
+ *
+ * This work is licensed under the Creative Commons Attribution 3.0 Unported
+ * License. To view a copy of this license, visit
+ * http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ * Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA.
+ */
+package giflib;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import javax.imageio.IIOException;
+
+/**
+ * The metadata of a GIF file: the logical screen descriptor, and the delay,
+ * disposal method and position of every frame. It is read by walking the
+ * GIF's blocks directly, skipping over the image data, instead of building a
+ * metadata tree for every frame.
+ *
+ * @author Ian Martinez
+ */
+public final class GifMetadata {
+
+    // The names ImageIO uses for each disposal method
+    private static final String[] DISPOSAL_METHODS = {
+        "none", "doNotDispose", "restoreToBackgroundColor", "restoreToPrevious",
+        "undefinedDisposalMethod4", "undefinedDisposalMethod5",
+        "undefinedDisposalMethod6", "undefinedDisposalMethod7"
+    };
+
+    private static final int EXTENSION_INTRODUCER = 0x21;
+    private static final int IMAGE_SEPARATOR = 0x2C;
+    private static final int GRAPHIC_CONTROL_LABEL = 0xF9;
+
+    private int width;
+    private int height;
+    private Color backgroundColor;
+
+    private int frameCount = 0;
+    private int[] delays = new int[16];
+    private String[] disposals = new String[16];
+    private int[] lefts = new int[16];
+    private int[] tops = new int[16];
+
+    private GifMetadata() { } // Use read()
+
+    /**
+     * Read the metadata of a GIF file.
+     *
+     * @param fileName the GIF file
+     *
+     * @return the GIF's metadata
+     *
+     * @throws IOException if the file can't be read or isn't a GIF
+     */
+    public static GifMetadata read(String fileName) throws IOException {
+        try (var input = new BufferedInputStream(new FileInputStream(fileName), 64 * 1024)) {
+            var metadata = new GifMetadata();
+            metadata.readBlocks(input);
+
+            return metadata;
+        }
+    }
+
+    /**
+     * Walk the blocks of a GIF stream.
+     *
+     * @param in the stream, positioned at the start of the GIF
+     *
+     * @throws IOException if the stream can't be read or isn't a GIF
+     */
+    private void readBlocks(InputStream in) throws IOException {
+        // Header
+        var signature = new byte[6];
+        readFully(in, signature);
+        if (signature[0] != 'G' || signature[1] != 'I' || signature[2] != 'F') {
+            throw new IIOException("Not a GIF file");
+        }
+
+        // Logical screen descriptor
+        width = readShort(in);
+        height = readShort(in);
+        int packed = readByte(in);
+        int backgroundIndex = readByte(in);
+        readByte(in); // Pixel aspect ratio
+
+        if ((packed & 0x80) != 0) { // Global color table
+            int tableSize = 1 << ((packed & 0x07) + 1);
+            var table = new byte[tableSize * 3];
+            readFully(in, table);
+
+            if (backgroundIndex < tableSize) {
+                backgroundColor = new Color(
+                        table[backgroundIndex * 3] & 0xFF,
+                        table[backgroundIndex * 3 + 1] & 0xFF,
+                        table[backgroundIndex * 3 + 2] & 0xFF);
+            }
+        }
+
+        // The graphic control extension applies to the next image
+        int delay = 0;
+        String disposal = DISPOSAL_METHODS[0];
+
+        try {
+            while (true) {
+                int block = in.read();
+
+                if (block == EXTENSION_INTRODUCER) {
+                    int label = readByte(in);
+
+                    if (label == GRAPHIC_CONTROL_LABEL) {
+                        int size = readByte(in);
+                        int controlPacked = readByte(in);
+                        delay = readShort(in);
+                        in.skipNBytes(Math.max(0, size - 3)); // Transparent color index
+                        disposal = DISPOSAL_METHODS[(controlPacked >> 2) & 0x07];
+                    }
+
+                    skipSubBlocks(in);
+                } else if (block == IMAGE_SEPARATOR) {
+                    int left = readShort(in);
+                    int top = readShort(in);
+                    readShort(in); // Width
+                    readShort(in); // Height
+                    int imagePacked = readByte(in);
+
+                    addFrame(delay, disposal, left, top);
+                    delay = 0;
+                    disposal = DISPOSAL_METHODS[0];
+
+                    if ((imagePacked & 0x80) != 0) { // Local color table
+                        in.skipNBytes(3L * (1 << ((imagePacked & 0x07) + 1)));
+                    }
+
+                    readByte(in); // LZW minimum code size
+                    skipSubBlocks(in);
+                } else { // Trailer, end of the stream, or garbage after the last frame
+                    break;
+                }
+            }
+        } catch (EOFException ex) {
+            // Truncated file, so keep the frames that were found
+        }
+    }
+
+    /**
+     * Record a frame.
+     *
+     * @param delay the frame's delay
+     * @param disposal the frame's disposal method
+     * @param left the frame's x position on the canvas
+     * @param top the frame's y position on the canvas
+     */
+    private void addFrame(int delay, String disposal, int left, int top) {
+        if (frameCount == delays.length) {
+            int newLength = delays.length * 2;
+            delays = Arrays.copyOf(delays, newLength);
+            disposals = Arrays.copyOf(disposals, newLength);
+            lefts = Arrays.copyOf(lefts, newLength);
+            tops = Arrays.copyOf(tops, newLength);
+        }
+
+        delays[frameCount] = delay;
+        disposals[frameCount] = disposal;
+        lefts[frameCount] = left;
+        tops[frameCount] = top;
+        frameCount++;
+    }
+
+    /**
+     * Skip a sequence of data sub-blocks, up to and including the block
+     * terminator.
+     *
+     * @param in the stream
+     *
+     * @throws IOException if the stream can't be read
+     */
+    private static void skipSubBlocks(InputStream in) throws IOException {
+        for (int size = readByte(in); size != 0; size = readByte(in)) {
+            in.skipNBytes(size);
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+
+        if (b < 0) {
+            throw new EOFException();
+        }
+
+        return b;
+    }
+
+    private static int readShort(InputStream in) throws IOException {
+        return readByte(in) | (readByte(in) << 8); // Little endian
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        if (in.readNBytes(bytes, 0, bytes.length) != bytes.length) {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * @return the width of the GIF's canvas
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the GIF's canvas
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the background color, or null if there is no global color
+     * table
+     */
+    public Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @param frameIndex the index of the frame
+     *
+     * @return the frame's delay, in hundredths of a second
+     */
+    public int getDelay(int frameIndex) {
+        return delays[frameIndex];
+    }
+
+    /**
+     * @param frameIndex the index of the frame
+     *
+     * @return the frame's disposal method
+     */
+    public String getDisposal(int frameIndex) {
+        return disposals[frameIndex];
+    }
+
+    /**
+     * @param frameIndex the index of the frame
+     *
+     * @return the frame's x position on the canvas
+     */
+    public int getLeft(int frameIndex) {
+        return lefts[frameIndex];
+    }
+
+    /**
+     * @param frameIndex the index of the frame
+     *
+     * @return the frame's y position on the canvas
+     */
+    public int getTop(int frameIndex) {
+        return tops[frameIndex];
+    }
+
+}
@@ -165,144 +165,15 @@ public class GifSequenceWriter implements AutoCloseable {
      * @return The array of GIF frames.
      */
     public static GifFrame[] getFrames(String fileName) {
-        try {
-            var stream = new FileInputStream(fileName);
+        try (var frameReader = new GifFrameReader(fileName)) {
             var frames = new ArrayList<GifFrame>(2);
 
-            int lastx = 0;
-            int lasty = 0;
-
-            int width = -1;
-            int height = -1;
-
-            Color backgroundColor = null;
-
-            var reader = (ImageReader) ImageIO.getImageReadersByFormatName("gif").next();
-            reader.setInput(ImageIO.createImageInputStream(stream));
-            var metadata = reader.getStreamMetadata();
-
-            if (metadata != null) {
-                var globalRoot = (IIOMetadataNode) metadata.getAsTree(metadata.getNativeMetadataFormatName());
-                var globalColorTable = globalRoot.getElementsByTagName("GlobalColorTable");
-                var globalScreenDescriptor = globalRoot.getElementsByTagName("LogicalScreenDescriptor");
-
-                if (globalScreenDescriptor != null && globalScreenDescriptor.getLength() > 0) {
-                    IIOMetadataNode screenDescriptor = (IIOMetadataNode) globalScreenDescriptor.item(0);
-
-                    if (screenDescriptor != null) {
-                        width = Integer.parseInt(screenDescriptor.getAttribute("logicalScreenWidth"));
-                        height = Integer.parseInt(screenDescriptor.getAttribute("logicalScreenHeight"));
-                    }
-                }
-
-                if (globalColorTable != null && globalColorTable.getLength() > 0) {
-                    var colorTable = (IIOMetadataNode) globalColorTable.item(0);
-
-                    if (colorTable != null) {
-                        String bgIndex = colorTable.getAttribute("backgroundColorIndex");
-                        var colorEntry = (IIOMetadataNode) colorTable.getFirstChild();
-
-                        while (colorEntry != null) {
-                            if (colorEntry.getAttribute("index").equals(bgIndex)) {
-                                int red = Integer.parseInt(colorEntry.getAttribute("red"));
-                                int green = Integer.parseInt(colorEntry.getAttribute("green"));
-                                int blue = Integer.parseInt(colorEntry.getAttribute("blue"));
-
-                                backgroundColor = new Color(red, green, blue);
-                                break;
-                            }
-
-                            colorEntry = (IIOMetadataNode) colorEntry.getNextSibling();
-                        }
-                    }
-                }
-            }
-
-            BufferedImage master = null;
-            boolean hasBackround = false;
-
-            for (int frameIndex = 0;; frameIndex++) {
-                BufferedImage image;
-
-                try {
-                    image = reader.read(frameIndex);
-                } catch (IndexOutOfBoundsException io) {
-                    break;
-                }
-
-                if (width == -1 || height == -1) {
-                    width = image.getWidth();
-                    height = image.getHeight();
-                }
-
-                var root = (IIOMetadataNode) reader.getImageMetadata(frameIndex).getAsTree("javax_imageio_gif_image_1.0");
-                var gceNode = (IIOMetadataNode) root.getElementsByTagName("GraphicControlExtension").item(0);
-                var children = root.getChildNodes();
-                var delay = Integer.valueOf(gceNode.getAttribute("delayTime"));
-                var disposal = gceNode.getAttribute("disposalMethod");
-
-                if (master == null) {
-                    master = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-                    master.createGraphics().setColor(backgroundColor);
-                    master.createGraphics().fillRect(0, 0, master.getWidth(), master.getHeight());
-                    hasBackround = image.getWidth() == width && image.getHeight() == height;
-                    master.createGraphics().drawImage(image, 0, 0, null);
-                } else {
-                    int x = 0;
-                    int y = 0;
-
-                    for (int nodeIndex = 0; nodeIndex < children.getLength(); nodeIndex++) {
-                        var nodeItem = children.item(nodeIndex);
-
-                        if (nodeItem.getNodeName().equals("ImageDescriptor")) {
-                            NamedNodeMap map = nodeItem.getAttributes();
-
-                            x = Integer.parseInt(map.getNamedItem("imageLeftPosition").getNodeValue());
-                            y = Integer.parseInt(map.getNamedItem("imageTopPosition").getNodeValue());
-                        }
-                    }
-
-                    if (disposal.equals("restoreToPrevious")) {
-                        BufferedImage from = null;
-                        for (int i = frameIndex - 1; i >= 0; i--) {
-                            if (!frames.get(i).getDisposal().equals("restoreToPrevious") || frameIndex == 0) {
-                                from = frames.get(i).getImage();
-                                break;
-                            }
-                        }
-
-                        var model = from.getColorModel();
-                        var alpha = from.isAlphaPremultiplied();
-                        var raster = from.copyData(null);
-                        master = new BufferedImage(model, raster, alpha, null);
-                    } else if (disposal.equals("restoreToBackgroundColor") && backgroundColor != null) {
-                        if (!hasBackround || frameIndex > 1) {
-                            var lastFrame = frames.get(frameIndex - 1);
-                            master.createGraphics().fillRect(lastx, lasty, lastFrame.getWidth(), lastFrame.getHeight());
-                        }
-                    }
-                    master.createGraphics().drawImage(image, x, y, null);
-
-                    lastx = x;
-                    lasty = y;
-                }
-
-                var model = master.getColorModel();
-                var alpha = master.isAlphaPremultiplied();
-                var raster = master.copyData(null);
-                var copy = new BufferedImage(model, raster, alpha, null);
-                frames.add(new GifFrame(copy, delay, disposal));
-                master.flush();
-            }
-            reader.dispose();
-
-            var fs = new GifFrame[frames.size()];
-            for (int i = 0; i < frames.size(); i++) {
-                fs[i] = frames.get(i);
+            for (var frame = frameReader.read(); frame != null; frame = frameReader.read()) {
+                frames.add(frame);
             }
 
-            return fs;
-        } catch (IOException | NumberFormatException | DOMException ex) {
+            return frames.toArray(new GifFrame[frames.size()]);
+        } catch (IOException ex) {
             return null;
         }
     }
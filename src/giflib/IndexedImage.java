@@ -0,0 +1,520 @@
+/**
+ * IndexedImage.java:
+ * An image converted to GIF color indices.
+ *
+ * ---
+ * Written by: Ian Martinez
+ * ---
+ *
+ * This work is licensed under the Creative Commons Attribution 3.0 Unported
+ * License. To view a copy of this license, visit
+ * http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ * Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA.
+ */
+package giflib;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * The pixels of an image as indices into a color table of at most 256 colors.
+ * Images with 256 colors or less are indexed exactly; images with more colors
+ * are quantized. Alpha is ignored; the only transparency is the pixels of a
+ * partial frame that are left as they were in the frame before.
+ *
+ * @author Ian Martinez
+ */
+final class IndexedImage {
+
+    static final int MAX_COLORS = 256;
+    static final int UNCHANGED = 0x01000000; // Flags a pixel that can be left transparent
+
+    private final int width;
+    private final int height;
+    private final byte[] indices;
+    private int[] colors;
+    private int transparentIndex = -1;
+
+    private IndexedImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        indices = new byte[width * height];
+    }
+
+    /**
+     * Convert an image to color indices.
+     *
+     * @param image the image
+     * @param colorTable the colors to index the image with, or null to pick
+     * the colors from the image. Pixels that aren't in the table get the
+     * closest color in it.
+     *
+     * @return the indexed image
+     */
+    static IndexedImage create(BufferedImage image, int[] colorTable) {
+        return create(readPixels(image), image.getWidth(), image.getHeight(), colorTable);
+    }
+
+    /**
+     * Convert pixels to color indices. Pixels flagged with {@link #UNCHANGED}
+     * get the transparent index if there is room for it in the color table,
+     * or their own color if there isn't.
+     *
+     * @param pixels the RGB color of every pixel, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param colorTable the colors to index the image with, or null to pick
+     * the colors from the image. Pixels that aren't in the table get the
+     * closest color in it.
+     *
+     * @return the indexed image
+     */
+    static IndexedImage create(int[] pixels, int width, int height, int[] colorTable) {
+        var indexed = new IndexedImage(width, height);
+
+        if (colorTable != null) {
+            indexed.indexWithTable(pixels, colorTable);
+        } else if (!indexed.indexExactly(pixels)) {
+            indexed.indexQuantized(pixels);
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Index the pixels with a fixed color table.
+     *
+     * @param pixels the pixels
+     * @param colorTable the colors
+     */
+    private void indexWithTable(int[] pixels, int[] colorTable) {
+        int tableSize = colorTable.length;
+        boolean roomForTransparent = tableSize < MAX_COLORS;
+        colors = new int[roomForTransparent ? tableSize + 1 : tableSize];
+        var lookup = new ColorMap();
+
+        for (int i = 0; i < tableSize; i++) {
+            colors[i] = colorTable[i] & 0xFFFFFF;
+            if (lookup.get(colors[i]) < 0) {
+                lookup.put(colors[i], i);
+            }
+        }
+
+        int lastPixel = -1, lastIndex = 0;
+
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+
+            if (pixel != lastPixel) {
+                lastPixel = pixel;
+
+                if ((pixel & UNCHANGED) != 0 && roomForTransparent) {
+                    transparentIndex = tableSize;
+                    lastIndex = transparentIndex;
+                } else {
+                    int rgb = pixel & 0xFFFFFF;
+                    lastIndex = lookup.get(rgb);
+
+                    if (lastIndex < 0) {
+                        lastIndex = closestColor(rgb, tableSize);
+                        lookup.put(rgb, lastIndex);
+                    }
+                }
+            }
+
+            indices[i] = (byte) lastIndex;
+        }
+
+        if (transparentIndex < 0) {
+            colors = Arrays.copyOf(colors, tableSize);
+        }
+    }
+
+    /**
+     * Index the pixels with their own colors.
+     *
+     * @param pixels the pixels
+     *
+     * @return false if there are too many colors to index exactly
+     */
+    private boolean indexExactly(int[] pixels) {
+        var palette = new int[MAX_COLORS];
+        int colorCount = 0;
+        var lookup = new ColorMap();
+        int lastPixel = -1, lastIndex = 0;
+
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+
+            if (pixel != lastPixel) {
+                lastPixel = pixel;
+
+                if ((pixel & UNCHANGED) != 0) {
+                    if (transparentIndex < 0) {
+                        if (colorCount == MAX_COLORS) {
+                            return false;
+                        }
+
+                        transparentIndex = colorCount++;
+                    }
+
+                    lastIndex = transparentIndex;
+                } else {
+                    lastIndex = lookup.get(pixel);
+
+                    if (lastIndex < 0) {
+                        if (colorCount == MAX_COLORS) {
+                            return false;
+                        }
+
+                        lastIndex = colorCount;
+                        palette[colorCount++] = pixel;
+                        lookup.put(pixel, lastIndex);
+                    }
+                }
+            }
+
+            indices[i] = (byte) lastIndex;
+        }
+
+        colors = Arrays.copyOf(palette, Math.max(1, colorCount));
+        return true;
+    }
+
+    /**
+     * Index the pixels with a palette picked by an octree quantizer.
+     *
+     * @param pixels the pixels
+     */
+    private void indexQuantized(int[] pixels) {
+        boolean hasUnchanged = false;
+        for (int pixel : pixels) {
+            if ((pixel & UNCHANGED) != 0) {
+                hasUnchanged = true;
+                break;
+            }
+        }
+
+        // Leave room for the transparent color
+        var quantizer = new OctreeQuantizer(hasUnchanged ? MAX_COLORS - 1 : MAX_COLORS);
+        int lastPixel = -1;
+
+        for (int pixel : pixels) {
+            if (pixel != lastPixel && (pixel & UNCHANGED) == 0) {
+                lastPixel = pixel;
+                quantizer.add(pixel);
+            }
+        }
+
+        colors = quantizer.getPalette();
+        if (hasUnchanged) {
+            transparentIndex = colors.length;
+            colors = Arrays.copyOf(colors, colors.length + 1);
+        }
+
+        int lastIndex = 0;
+        lastPixel = -1;
+
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+
+            if (pixel != lastPixel) {
+                lastPixel = pixel;
+                lastIndex = ((pixel & UNCHANGED) != 0) ? transparentIndex : quantizer.getIndex(pixel);
+            }
+
+            indices[i] = (byte) lastIndex;
+        }
+    }
+
+    /**
+     * Find the color in the color table closest to a color.
+     *
+     * @param rgb the color
+     * @param tableSize the number of colors to search
+     *
+     * @return the index of the closest color
+     */
+    private int closestColor(int rgb, int tableSize) {
+        int r = (rgb >>> 16) & 0xFF, g = (rgb >>> 8) & 0xFF, b = rgb & 0xFF;
+        int closest = 0, closestDistance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < tableSize; i++) {
+            int dr = r - ((colors[i] >>> 16) & 0xFF);
+            int dg = g - ((colors[i] >>> 8) & 0xFF);
+            int db = b - (colors[i] & 0xFF);
+            int distance = dr * dr + dg * dg + db * db;
+
+            if (distance < closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * Read the pixels of an image as RGB, without alpha.
+     *
+     * @param image the image
+     *
+     * @return the color of every pixel, row by row
+     */
+    static int[] readPixels(BufferedImage image) {
+        if (image.getColorModel() instanceof IndexColorModel colorModel) {
+            var pixels = readIndexedPixels(image, colorModel);
+
+            if (pixels != null) {
+                return pixels;
+            }
+        }
+
+        int width = image.getWidth();
+        var pixels = new int[width * image.getHeight()];
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            readRow(image, y, pixels, y * width);
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Read the pixels of an indexed image straight from its color indices,
+     * with 1, 2, 4 or 8 bits per pixel.
+     *
+     * @param image the image
+     * @param colorModel the image's color model
+     *
+     * @return the color of every pixel, row by row, or null if the image's
+     * indices aren't stored in a way that can be read directly
+     */
+    private static int[] readIndexedPixels(BufferedImage image, IndexColorModel colorModel) {
+        var raster = image.getRaster();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || !(raster.getDataBuffer() instanceof DataBufferByte dataBuffer)) {
+            return null;
+        }
+
+        int bits, stride;
+        var sampleModel = raster.getSampleModel();
+
+        if (sampleModel instanceof MultiPixelPackedSampleModel packed && packed.getDataBitOffset() == 0) {
+            bits = packed.getPixelBitStride();
+            stride = packed.getScanlineStride();
+        } else if (sampleModel instanceof ComponentSampleModel component
+                && component.getNumBands() == 1 && component.getPixelStride() == 1
+                && component.getBandOffsets()[0] == 0) {
+            bits = 8;
+            stride = component.getScanlineStride();
+        } else {
+            return null;
+        }
+
+        var colors = new int[256];
+        colorModel.getRGBs(colors);
+
+        var data = dataBuffer.getData();
+        int width = image.getWidth();
+        int mask = (1 << bits) - 1;
+        var pixels = new int[width * image.getHeight()];
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            int dataRow = y * stride;
+            int offset = y * width;
+
+            for (int x = 0; x < width; x++) {
+                int bit = x * bits;
+                int index = ((data[dataRow + (bit >>> 3)] & 0xFF) >>> (8 - bits - (bit & 7))) & mask;
+                pixels[offset + x] = colors[index] & 0xFFFFFF;
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Read a row of an image as RGB, without alpha.
+     *
+     * @param image the image
+     * @param y the row
+     * @param row where to put the row's colors
+     * @param rowOffset where the row starts in the row array
+     */
+    private static void readRow(BufferedImage image, int y, int[] row, int rowOffset) {
+        int width = image.getWidth();
+        int type = isPacked(image) ? image.getType() : BufferedImage.TYPE_CUSTOM;
+
+        switch (type) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                var data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                int offset = y * width;
+
+                for (int x = 0; x < width; x++) {
+                    row[rowOffset + x] = data[offset + x] & 0xFFFFFF;
+                }
+            }
+            case BufferedImage.TYPE_INT_ARGB_PRE -> {
+                var data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                int offset = y * width;
+
+                for (int x = 0; x < width; x++) {
+                    int argb = data[offset + x];
+                    int a = argb >>> 24;
+
+                    if (a == 0xFF || a == 0) {
+                        row[rowOffset + x] = argb & 0xFFFFFF;
+                    } else { // Undo the premultiplication
+                        int r = Math.min(255, ((argb >>> 16) & 0xFF) * 255 / a);
+                        int g = Math.min(255, ((argb >>> 8) & 0xFF) * 255 / a);
+                        int b = Math.min(255, (argb & 0xFF) * 255 / a);
+                        row[rowOffset + x] = (r << 16) | (g << 8) | b;
+                    }
+                }
+            }
+            default -> {
+                image.getRGB(0, y, width, 1, row, rowOffset, width);
+
+                for (int x = 0; x < width; x++) {
+                    row[rowOffset + x] &= 0xFFFFFF;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if an image's pixels start at the beginning of its data buffer
+     * with no padding between rows, which isn't the case for subimages.
+     *
+     * @param image the image
+     *
+     * @return true if the data buffer can be read row by row directly
+     */
+    private static boolean isPacked(BufferedImage image) {
+        var raster = image.getRaster();
+
+        return raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                && sampleModel.getScanlineStride() == image.getWidth();
+    }
+
+    /**
+     * @return the color index of every pixel, row by row
+     */
+    byte[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return the color table
+     */
+    int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * @return the index of the transparent color, or -1 if there isn't one
+     */
+    int getTransparentIndex() {
+        return transparentIndex;
+    }
+
+    /**
+     * @return the number of bits needed to store a color index
+     */
+    int getColorBits() {
+        int bits = 1;
+        while ((1 << bits) < colors.length) {
+            bits++;
+        }
+
+        return bits;
+    }
+
+    /**
+     * @return the width of the image
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * An open addressing hash map from RGB colors to color indices.
+     */
+    private static final class ColorMap {
+
+        private int[] keys = new int[1024]; // Colors with full alpha, so 0 means empty
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        int get(int rgb) {
+            int key = rgb | 0xFF000000;
+            int mask = keys.length - 1;
+
+            for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+
+            return -1;
+        }
+
+        void put(int rgb, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+
+            int key = rgb | 0xFF000000;
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+
+            if (keys[i] == 0) {
+                size++;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void grow() {
+            var oldKeys = keys;
+            var oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * LzwCompressor.java:
+ * Compresses GIF image data.
+ *
+ * ---
+ * Written by: Ian Martinez
+ * Based on the LZW encoder by Jef Poskanzer, Kevin Weiner and the original
+ * UNIX compress authors.
+ * ---
+ *
+ * This work is licensed under the Creative Commons Attribution 3.0 Unported
+ * License. To view a copy of this license, visit
+ * http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ * Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA.
+ */
+package giflib;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Compresses color indices with the variable length LZW used by GIF, looking
+ * strings up in an open addressing hash table. Each compressor has its own
+ * tables, so one compressor should be used per thread.
+ *
+ * @author Ian Martinez
+ */
+final class LzwCompressor {
+
+    private static final int MAX_BITS = 12;
+    private static final int MAX_MAX_CODE = 1 << MAX_BITS;
+    private static final int HASH_SIZE = 5003; // 80% occupancy
+    private static final int HASH_SHIFT = 4; // Keeps (index << HASH_SHIFT) ^ prefix below HASH_SIZE
+
+    private final int[] hashTable = new int[HASH_SIZE];
+    private final int[] codeTable = new int[HASH_SIZE];
+
+    // State for the image being compressed
+    private ByteArrayOutputStream out;
+    private int initBits, bits, maxCode, nextCode;
+    private int clearCode, endCode;
+    private boolean clearFlag;
+    private int accumulator, accumulatorBits;
+    private final byte[] block = new byte[256];
+    private int blockSize;
+
+    /**
+     * Compress the color indices of an image and write them as GIF image
+     * data: the LZW minimum code size, the data sub-blocks, and the block
+     * terminator.
+     *
+     * @param indices the color index of every pixel
+     * @param length the number of pixels
+     * @param colorBits the number of bits in the color table
+     * @param out where to write the image data
+     */
+    void compress(byte[] indices, int length, int colorBits, ByteArrayOutputStream out) {
+        this.out = out;
+        int minCodeSize = Math.max(2, colorBits);
+        out.write(minCodeSize);
+
+        initBits = minCodeSize + 1;
+        bits = initBits;
+        maxCode = (1 << bits) - 1;
+        clearCode = 1 << (initBits - 1);
+        endCode = clearCode + 1;
+        nextCode = clearCode + 2;
+        clearFlag = false;
+        accumulator = 0;
+        accumulatorBits = 0;
+        blockSize = 0;
+
+        Arrays.fill(hashTable, -1);
+        output(clearCode);
+
+        if (length > 0) {
+            int prefix = indices[0] & 0xFF;
+
+            outer:
+            for (int p = 1; p < length; p++) {
+                int c = indices[p] & 0xFF;
+                int key = (c << MAX_BITS) + prefix;
+                int i = (c << HASH_SHIFT) ^ prefix;
+
+                if (hashTable[i] == key) {
+                    prefix = codeTable[i];
+                    continue;
+                } else if (hashTable[i] >= 0) { // Secondary hash
+                    int displacement = (i == 0) ? 1 : HASH_SIZE - i;
+
+                    do {
+                        i -= displacement;
+                        if (i < 0) {
+                            i += HASH_SIZE;
+                        }
+
+                        if (hashTable[i] == key) {
+                            prefix = codeTable[i];
+                            continue outer;
+                        }
+                    } while (hashTable[i] >= 0);
+                }
+
+                output(prefix);
+                prefix = c;
+
+                if (nextCode < MAX_MAX_CODE) {
+                    codeTable[i] = nextCode++;
+                    hashTable[i] = key;
+                } else { // Table is full, so start over
+                    Arrays.fill(hashTable, -1);
+                    nextCode = clearCode + 2;
+                    clearFlag = true;
+                    output(clearCode);
+                }
+            }
+
+            output(prefix);
+        }
+
+        output(endCode);
+        out.write(0); // Block terminator
+        this.out = null;
+    }
+
+    /**
+     * Write a code, then grow the code size if the next code won't fit.
+     *
+     * @param code the code to write
+     */
+    private void output(int code) {
+        accumulator &= (1 << accumulatorBits) - 1;
+        accumulator |= code << accumulatorBits;
+        accumulatorBits += bits;
+
+        while (accumulatorBits >= 8) {
+            writeByte(accumulator & 0xFF);
+            accumulator >>>= 8;
+            accumulatorBits -= 8;
+        }
+
+        if (nextCode > maxCode || clearFlag) {
+            if (clearFlag) {
+                bits = initBits;
+                maxCode = (1 << bits) - 1;
+                clearFlag = false;
+            } else {
+                bits++;
+                maxCode = (bits == MAX_BITS) ? MAX_MAX_CODE : (1 << bits) - 1;
+            }
+        }
+
+        if (code == endCode) {
+            while (accumulatorBits > 0) {
+                writeByte(accumulator & 0xFF);
+                accumulator >>>= 8;
+                accumulatorBits -= 8;
+            }
+
+            flushBlock();
+        }
+    }
+
+    /**
+     * Add a byte to the current sub-block, writing the sub-block when full.
+     *
+     * @param b the byte
+     */
+    private void writeByte(int b) {
+        block[blockSize++] = (byte) b;
+
+        if (blockSize == 255) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Write the current sub-block, if there is anything in it.
+     */
+    private void flushBlock() {
+        if (blockSize > 0) {
+            out.write(blockSize);
+            out.write(block, 0, blockSize);
+            blockSize = 0;
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * OctreeQuantizer.java:
+ * Reduces the colors of an image to fit a GIF color table.
+ *
+ * ---
+ * Written by: Ian Martinez
+ * ---
+ *
+ * This work is licensed under the Creative Commons Attribution 3.0 Unported
+ * License. To view a copy of this license, visit
+ * http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ * Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA.
+ */
+package giflib;
+
+/**
+ * Picks a palette for an image with too many colors for a GIF color table,
+ * using an octree: every color is added as a leaf, and the deepest branches
+ * are merged into their average color until few enough leaves are left.
+ *
+ * @author Ian Martinez
+ */
+final class OctreeQuantizer {
+
+    private static final int LEAF_LEVEL = 8;
+
+    private static final class Node {
+
+        Node[] children;
+        boolean leaf;
+        long red, green, blue;
+        int pixelCount;
+        int paletteIndex;
+        Node nextReducible; // The next branch on the same level
+
+    }
+
+    private final int maxColors;
+    private final Node root = new Node();
+    private final Node[] reducible = new Node[LEAF_LEVEL]; // Branches on each level, which can be merged
+    private int leafCount = 0;
+
+    /**
+     * Create a quantizer.
+     *
+     * @param maxColors the most colors the palette can have
+     */
+    OctreeQuantizer(int maxColors) {
+        this.maxColors = maxColors;
+    }
+
+    /**
+     * Add a pixel's color to the tree.
+     *
+     * @param rgb the color
+     */
+    void add(int rgb) {
+        var node = root;
+        int level = 0;
+
+        while (!node.leaf && level < LEAF_LEVEL) {
+            if (node.children == null) {
+                node.children = new Node[8];
+                node.nextReducible = reducible[level];
+                reducible[level] = node;
+            }
+
+            int child = childIndex(rgb, level);
+            if (node.children[child] == null) {
+                var newNode = new Node();
+                if (level + 1 == LEAF_LEVEL) {
+                    newNode.leaf = true;
+                    leafCount++;
+                }
+                node.children[child] = newNode;
+            }
+
+            node = node.children[child];
+            level++;
+        }
+
+        node.red += (rgb >>> 16) & 0xFF;
+        node.green += (rgb >>> 8) & 0xFF;
+        node.blue += rgb & 0xFF;
+        node.pixelCount++;
+
+        while (leafCount > maxColors) {
+            reduce();
+        }
+    }
+
+    /**
+     * Merge the children of the deepest branch into it.
+     */
+    private void reduce() {
+        int level = LEAF_LEVEL - 1;
+        while (reducible[level] == null) {
+            level--;
+        }
+
+        var node = reducible[level];
+        reducible[level] = node.nextReducible;
+
+        int childCount = 0;
+        for (var child : node.children) {
+            if (child != null) {
+                node.red += child.red;
+                node.green += child.green;
+                node.blue += child.blue;
+                node.pixelCount += child.pixelCount;
+                childCount++;
+            }
+        }
+
+        node.children = null;
+        node.leaf = true;
+        leafCount -= childCount - 1;
+    }
+
+    /**
+     * Build the palette from the leaves of the tree. After this, no more
+     * colors should be added.
+     *
+     * @return the palette
+     */
+    int[] getPalette() {
+        var palette = new int[leafCount];
+        fillPalette(root, palette, 0);
+
+        return palette;
+    }
+
+    private static int fillPalette(Node node, int[] palette, int index) {
+        if (node.leaf) {
+            int count = Math.max(1, node.pixelCount);
+            int r = (int) (node.red / count);
+            int g = (int) (node.green / count);
+            int b = (int) (node.blue / count);
+
+            node.paletteIndex = index;
+            palette[index] = (r << 16) | (g << 8) | b;
+
+            return index + 1;
+        }
+
+        if (node.children != null) {
+            for (var child : node.children) {
+                if (child != null) {
+                    index = fillPalette(child, palette, index);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Get the palette index of a color that was added to the tree.
+     *
+     * @param rgb the color
+     *
+     * @return the index of the color in the palette
+     */
+    int getIndex(int rgb) {
+        var node = root;
+        int level = 0;
+
+        while (!node.leaf) {
+            node = node.children[childIndex(rgb, level)];
+            level++;
+        }
+
+        return node.paletteIndex;
+    }
+
+    private static int childIndex(int rgb, int level) {
+        int shift = 7 - level;
+
+        return (((rgb >>> (16 + shift)) & 1) << 2)
+                | (((rgb >>> (8 + shift)) & 1) << 1)
+                | ((rgb >>> shift) & 1);
+    }
+
+}